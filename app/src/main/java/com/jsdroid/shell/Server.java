@@ -4,27 +4,49 @@ package com.jsdroid.shell;
 import android.app.ActivityThread;
 import android.os.Looper;
 
+import com.jsdroid.service.ServerThreadPool;
+import com.jsdroid.shell.bean.PoolStats;
 import com.jsdroid.shell.server.LocalSocketServer;
 import com.jsdroid.shell.server.SocketServer;
 import com.jsdroid.uiautomator.UiDevice;
 import com.jsdroid.utils.LibraryUtil;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 
 public class Server {
-    private static ExecutorService threadPool;
+    //接入和读取连接、发送数据
+    private static ServerPool ioPool;
+    //处理请求的工作线程，数量有限，不随连接数增长
+    private static ServerPool workerPool;
+    //运行脚本
+    private static ServerPool scriptPool;
+    //截图等后台任务，满时在提交线程中执行
+    private static ServerPool backgroundPool;
+    //编译脚本，耗时长，不占用截图使用的后台线程
+    private static ServerPool compilePool;
+    //发送数据，每个连接同一时间最多一个写任务
+    private static ServerPool writerPool;
     private static LocalSocketServer localSocketServer;
     private static SocketServer socketServer;
 
     public static void main(String[] args) {
         System.out.println("server start.");
-        threadPool = Executors.newCachedThreadPool();
+        ioPool = new ServerPool("io", 2, 64, new SynchronousQueue<Runnable>(), 0, false);
+        workerPool = new ServerPool("worker", 4, 16, new LinkedBlockingQueue<Runnable>(256), 256, false);
+        scriptPool = new ServerPool("script", 4, 4, new LinkedBlockingQueue<Runnable>(16), 16, false);
+        backgroundPool = new ServerPool("background", 2, 8, new LinkedBlockingQueue<Runnable>(64), 64, true);
+        compilePool = new ServerPool("compile", 2, 2, new LinkedBlockingQueue<Runnable>(8), 8, false);
+        writerPool = new ServerPool("writer", 2, 16, new LinkedBlockingQueue<Runnable>(1024), 1024, false);
         //启动服务
         localSocketServer = new LocalSocketServer();
         socketServer = new SocketServer();
-        threadPool.execute(localSocketServer);
-        threadPool.execute(socketServer);
+        ioPool.execute(localSocketServer);
+        ioPool.execute(socketServer);
         //加载so
         LibraryUtil.loadAllSoLib();
         //初始化uiautomator
@@ -49,7 +71,81 @@ public class Server {
         socketServer.close();
     }
 
+    /**
+     * 在io线程中执行
+     *
+     * @param runnable
+     * @throws java.util.concurrent.RejectedExecutionException io线程已满
+     */
     public static void execute(Runnable runnable) {
-        threadPool.execute(runnable);
+        ioPool.execute(runnable);
+    }
+
+    /**
+     * 在发送线程中写数据
+     *
+     * @param runnable
+     * @throws java.util.concurrent.RejectedExecutionException 等待发送的连接过多
+     */
+    public static void write(Runnable runnable) {
+        writerPool.execute(runnable);
+    }
+
+    /**
+     * 在工作线程中处理请求
+     *
+     * @param runnable
+     * @throws java.util.concurrent.RejectedExecutionException 工作线程和队列已满
+     */
+    public static void dispatch(Runnable runnable) {
+        workerPool.execute(runnable);
+    }
+
+    /**
+     * 在脚本线程中运行脚本
+     *
+     * @param runnable
+     * @throws java.util.concurrent.RejectedExecutionException 运行的脚本过多
+     */
+    public static void runScript(Runnable runnable) {
+        scriptPool.execute(runnable);
+    }
+
+    /**
+     * 在后台线程中执行，线程池满时在当前线程执行
+     *
+     * @param callable
+     * @param <T>
+     * @return
+     */
+    public static <T> Future<T> submit(Callable<T> callable) {
+        return backgroundPool.submit(callable);
+    }
+
+    /**
+     * 在编译线程中执行
+     *
+     * @param runnable
+     * @throws java.util.concurrent.RejectedExecutionException 等待编译的任务过多
+     */
+    public static void compile(Runnable runnable) {
+        compilePool.execute(runnable);
+    }
+
+    /**
+     * 各线程池的状态
+     *
+     * @return
+     */
+    public static List<PoolStats> getPoolStats() {
+        List<PoolStats> stats = new ArrayList<>();
+        for (ServerPool pool : new ServerPool[]{ioPool, workerPool, scriptPool, backgroundPool, compilePool, writerPool}) {
+            if (pool != null) {
+                stats.add(pool.stats());
+            }
+        }
+        //service模块的代理服务线程池
+        stats.add(ServerPool.stats("proxy", ServerThreadPool.getThreadPool(), 0, ServerThreadPool.getRejectedCount()));
+        return stats;
     }
 }
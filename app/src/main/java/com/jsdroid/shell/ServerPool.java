@@ -0,0 +1,84 @@
+package com.jsdroid.shell;
+
+import com.jsdroid.shell.bean.PoolStats;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有名字、有上限的线程池，记录拒绝次数
+ */
+public class ServerPool extends ThreadPoolExecutor {
+    private final String name;
+    private final int queueCapacity;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param name          线程名前缀
+     * @param coreSize
+     * @param maxSize
+     * @param queue         等待队列
+     * @param queueCapacity 队列容量，用于统计
+     * @param callerRuns    队列满时是否在提交线程中执行，否则抛出RejectedExecutionException
+     */
+    public ServerPool(final String name, int coreSize, int maxSize, BlockingQueue<Runnable> queue,
+                      int queueCapacity, final boolean callerRuns) {
+        super(coreSize, maxSize, 60, TimeUnit.SECONDS, queue, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        allowCoreThreadTimeOut(true);
+        final RejectedExecutionHandler delegate = callerRuns ? new CallerRunsPolicy() : new AbortPolicy();
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                rejectedCount.incrementAndGet();
+                delegate.rejectedExecution(r, executor);
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PoolStats stats() {
+        return stats(name, this, queueCapacity, rejectedCount.get());
+    }
+
+    /**
+     * 线程池状态，也用于其它模块创建的线程池
+     *
+     * @param name
+     * @param executor
+     * @param queueCapacity
+     * @param rejectedCount
+     * @return
+     */
+    public static PoolStats stats(String name, ThreadPoolExecutor executor, int queueCapacity, long rejectedCount) {
+        PoolStats stats = new PoolStats();
+        stats.name = name;
+        stats.activeCount = executor.getActiveCount();
+        stats.poolSize = executor.getPoolSize();
+        stats.largestPoolSize = executor.getLargestPoolSize();
+        stats.maxPoolSize = executor.getMaximumPoolSize();
+        stats.queueSize = executor.getQueue().size();
+        stats.queueCapacity = queueCapacity;
+        stats.completedTaskCount = executor.getCompletedTaskCount();
+        stats.rejectedCount = rejectedCount;
+        return stats;
+    }
+}
@@ -0,0 +1,24 @@
+package com.jsdroid.shell.bean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BundleManifest {
+    //目标JsDroidScript.VERSION
+    public String version;
+    public String dxVersion;
+    public String groovyVersion;
+    //编译模式：static或dynamic
+    public String mode;
+    //主脚本，相对脚本目录
+    public String main;
+    //源文件哈希，相对路径 -> 哈希
+    public Map<String, String> hashes = new LinkedHashMap<>();
+    //dex中的类，主脚本的类在最前
+    public List<String> classNames = new ArrayList<>();
+    //资源文件，相对路径
+    public List<String> resources = new ArrayList<>();
+    public long buildTime;
+}
@@ -12,4 +12,16 @@ public class CaptureInfo {
     public int imageHeight;
     public int screenWidth;
     public int screenHeight;
+    //图片格式，见CaptureOption
+    public String imageFormat;
+    //图片是否经过lz4压缩
+    public boolean imageLz4;
+    //图片原始字节数，lz4解压时使用
+    public int imageRawLength;
+    //各阶段耗时，单位毫秒
+    public long screenshotTime;
+    public long hierarchyTime;
+    public long actTime;
+    public long encodeTime;
+    public long totalTime;
 }
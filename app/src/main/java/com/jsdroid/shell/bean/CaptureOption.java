@@ -1,6 +1,21 @@
 package com.jsdroid.shell.bean;
 
 public class CaptureOption {
+    //png压缩，quality无效
+    public static final String FORMAT_PNG = "png";
+    //jpeg压缩，使用quality
+    public static final String FORMAT_JPEG = "jpeg";
+    //原始像素，每像素2字节
+    public static final String FORMAT_RGB565 = "rgb565";
+    //原始像素，每像素4字节，内存顺序RGBA
+    public static final String FORMAT_ARGB8888 = "argb8888";
+
     public float scale = 1.0f;
     public int quality = 100;
+    //图片格式
+    public String format = FORMAT_PNG;
+    //原始像素格式是否使用lz4块压缩
+    public boolean lz4;
+    //是否附带窗口层级xml
+    public boolean hierarchy;
 }
@@ -0,0 +1,9 @@
+package com.jsdroid.shell.bean;
+
+public class ClassStats {
+    public String name;
+    //源文件，相对脚本目录
+    public String source;
+    //class字节数
+    public int size;
+}
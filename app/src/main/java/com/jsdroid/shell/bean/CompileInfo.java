@@ -0,0 +1,19 @@
+package com.jsdroid.shell.bean;
+
+import java.util.List;
+
+public class CompileInfo {
+    //脚本目录
+    public String dir;
+    public boolean success;
+    //编译失败的原因
+    public String error;
+    //编译和加载的时间，单位毫秒
+    public long compileTime;
+    //静态编译失败等警告
+    public List<String> warnings;
+    //各阶段耗时和生成的类
+    public CompileReport report;
+    //生成的脚本包
+    public String bundle;
+}
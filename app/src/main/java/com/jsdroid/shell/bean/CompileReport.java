@@ -0,0 +1,25 @@
+package com.jsdroid.shell.bean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompileReport {
+    //编译模式：static或dynamic
+    public String mode;
+    //使用了缓存的类，没有重新编译
+    public boolean cached;
+    //重新编译的源文件数
+    public int sourceCount;
+    //总耗时，单位毫秒
+    public long totalTime;
+    //各阶段耗时，单位毫秒
+    //groovy:开头的为groovy编译阶段，parse为groovy编译总耗时，其余为translate、dex、jar、load
+    public Map<String, Long> phases = new LinkedHashMap<>();
+    public List<ClassStats> classes = new ArrayList<>();
+    //生成的dex字节数
+    public long dexSize;
+    //静态编译失败等警告
+    public List<String> warnings = new ArrayList<>();
+}
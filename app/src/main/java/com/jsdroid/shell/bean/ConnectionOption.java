@@ -0,0 +1,26 @@
+package com.jsdroid.shell.bean;
+
+public class ConnectionOption {
+    //发送队列满时等待，日志输出会被阻塞
+    public static final String POLICY_BLOCK = "block";
+    //发送队列满时丢弃新的日志
+    public static final String POLICY_DROP = "drop";
+    //发送队列满时丢弃最旧的日志
+    public static final String POLICY_DROP_OLDEST = "drop_oldest";
+
+    //不压缩
+    public static final String COMPRESS_NONE = "none";
+    //deflate流式压缩，只在帧模式下有效
+    public static final String COMPRESS_DEFLATE = "deflate";
+
+    //发送队列长度
+    public int outboundCapacity = 1024;
+    //发送队列满时的处理方式，只会丢弃日志
+    public String outboundPolicy = POLICY_BLOCK;
+    //压缩方式，服务端不支持时返回none
+    public String compress = COMPRESS_NONE;
+    //超过这个长度的帧才压缩
+    public int compressThreshold = 4096;
+    //行模式下data为json时直接嵌入，不再转义为字符串
+    public boolean rawData;
+}
@@ -0,0 +1,9 @@
+package com.jsdroid.shell.bean;
+
+public class ConnectionStats {
+    public int id;
+    //连接时间
+    public long openTime;
+    public long bytesIn;
+    public long bytesOut;
+}
@@ -1,10 +1,108 @@
 package com.jsdroid.shell.bean;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.annotation.JSONField;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
 public class Event {
     //类型
     public EventType type;
+    //请求id，响应时原样返回
+    public int id;
     //数据:如果是图片通过转hex传输
     public String data;
+    //帧模式下的原始数据，不参与json序列化
+    @JSONField(serialize = false, deserialize = false)
+    public byte[] payload;
+    //data是否已经是json，行模式下可以直接嵌入
+    @JSONField(serialize = false, deserialize = false)
+    public boolean json;
+    //jsonData设置的对象，编码时直接序列化到输出缓冲区，不生成中间的json字符串
+    @JSONField(serialize = false, deserialize = false)
+    public Object dataObject;
+
+    /**
+     * 设置数据为对象的json，发送时再序列化
+     *
+     * @param obj
+     */
+    public void jsonData(Object obj) {
+        data = null;
+        dataObject = obj;
+        json = true;
+    }
+
+    /**
+     * 数据是否为jsonData设置的对象
+     *
+     * @return
+     */
+    public boolean hasDataObject() {
+        return json && data == null;
+    }
+
+    /**
+     * 解析数据，帧模式下直接从字节解析
+     *
+     * @param clazz
+     * @param <T>
+     * @return
+     */
+    public <T> T parseData(Class<T> clazz) {
+        if (payload != null) {
+            if (payload.length == 0) {
+                return null;
+            }
+            return JSON.parseObject(payload, clazz);
+        }
+        return JSON.parseObject(data, clazz);
+    }
+
+    /**
+     * 解析脚本请求，帧模式下数据可以是[Script的json][0][脚本原文]，
+     * 原文直接作为Script.text，不需要json转义
+     *
+     * @return
+     */
+    public Script parseScript() {
+        if (payload != null) {
+            for (int i = 0; i < payload.length; i++) {
+                //json中不会出现未转义的0
+                if (payload[i] == 0) {
+                    Script script = i == 0 ? null : JSON.parseObject(Arrays.copyOf(payload, i), Script.class);
+                    if (script == null) {
+                        script = new Script();
+                    }
+                    try {
+                        script.text = new String(payload, i + 1, payload.length - i - 1, "utf-8");
+                    } catch (UnsupportedEncodingException e) {
+                    }
+                    return script;
+                }
+            }
+        }
+        return parseData(Script.class);
+    }
+
+    /**
+     * 数据的文本形式
+     *
+     * @return
+     */
+    public String dataString() {
+        if (payload != null) {
+            try {
+                return new String(payload, "utf-8");
+            } catch (Exception e) {
+            }
+        }
+        if (hasDataObject()) {
+            return JSON.toJSONString(dataObject);
+        }
+        return data;
+    }
 
     public static void main(String[] args) {
 
@@ -0,0 +1,13 @@
+package com.jsdroid.shell.bean;
+
+public class EventStats {
+    public String type;
+    public long count;
+    //处理时抛出异常的次数
+    public long errors;
+    //延迟，单位微秒
+    public long p50;
+    public long p99;
+    public long max;
+    public long mean;
+}
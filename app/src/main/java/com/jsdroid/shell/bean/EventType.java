@@ -1,13 +1,60 @@
 package com.jsdroid.shell.bean;
 
+/**
+ * 事件类型，帧模式下帧头中的类型为code，和声明顺序无关，新类型使用新的code
+ */
 public enum  EventType {
-    TYPE_RUN, // 运行脚本
-    TYPE_RUN_RESULT, // 运行结果
-    TYPE_STOP_SCRIPT,  // 停止
-    TYPE_CAPTURE, // 截图
-    TYPE_TOAST, // 消息
-    TYPE_LOG,   // 输出
-    TYPE_EXIT, // 退出
-    TYPE_VOLUME_UP, // 音量-键按下
-    TYPE_VOLUME_DOWN, // 音量+键按下
+    TYPE_RUN(0), // 运行脚本
+    TYPE_RUN_RESULT(1), // 运行结果
+    TYPE_STOP_SCRIPT(2),  // 停止，数据为运行id，为空时停止所有脚本
+    TYPE_CAPTURE(3), // 截图
+    TYPE_TOAST(4), // 消息
+    TYPE_LOG(5),   // 输出
+    TYPE_EXIT(6), // 退出
+    TYPE_VOLUME_UP(7), // 音量-键按下
+    TYPE_VOLUME_DOWN(8), // 音量+键按下
+    TYPE_OPTION(9), // 连接设置
+    TYPE_POOL_STATS(10), // 线程池状态
+    TYPE_RUN_START(11), // 脚本开始运行，数据为运行id
+    TYPE_SCRIPT_LIST(12), // 正在运行的脚本
+    TYPE_METRICS(13), // 请求统计
+    TYPE_COMPILE(14), // 预编译脚本，数据同TYPE_RUN，返回CompileInfo
+    TYPE_UNLOAD_SCRIPT(15), // 释放脚本工程的编译器，数据为脚本目录，为空时释放全部
+    TYPE_COMPILE_REPORT(16), // 编译报告，运行脚本前发送，也可以用脚本目录请求
+    TYPE_BUILD_BUNDLE(17), // 编译脚本包，数据同TYPE_RUN，返回CompileInfo
+    TYPE_ERROR(18), // 请求无法处理，id为请求id，数据为原因
+    ;
+
+    private static final EventType[] CODES = new EventType[256];
+
+    static {
+        for (EventType type : values()) {
+            CODES[type.code] = type;
+        }
+    }
+
+    private final int code;
+
+    EventType(int code) {
+        this.code = code;
+    }
+
+    /**
+     * 帧头中的类型
+     *
+     * @return
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * 根据帧头中的类型查找
+     *
+     * @param code
+     * @return 未知类型返回null
+     */
+    public static EventType fromCode(int code) {
+        return code >= 0 && code < CODES.length ? CODES[code] : null;
+    }
 }
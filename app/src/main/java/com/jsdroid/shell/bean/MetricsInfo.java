@@ -0,0 +1,15 @@
+package com.jsdroid.shell.bean;
+
+import java.util.List;
+
+public class MetricsInfo {
+    //服务启动时间
+    public long startTime;
+    public int activeConnections;
+    public long totalConnections;
+    //所有连接的收发字节数，包括已关闭的连接
+    public long bytesIn;
+    public long bytesOut;
+    public List<EventStats> events;
+    public List<ConnectionStats> connections;
+}
@@ -0,0 +1,16 @@
+package com.jsdroid.shell.bean;
+
+public class PoolStats {
+    public String name;
+    //正在执行任务的线程数
+    public int activeCount;
+    public int poolSize;
+    public int largestPoolSize;
+    public int maxPoolSize;
+    //排队的任务数
+    public int queueSize;
+    public int queueCapacity;
+    public long completedTaskCount;
+    //被拒绝的任务数
+    public long rejectedCount;
+}
@@ -0,0 +1,12 @@
+package com.jsdroid.shell.bean;
+
+public class RunInfo {
+    //运行id
+    public int id;
+    //启动脚本的请求id
+    public int requestId;
+    //脚本目录
+    public String dir;
+    public long startTime;
+    public boolean cancelled;
+}
@@ -4,4 +4,8 @@ public class Script {
     public String pkg;
     public String text;
     public String dir;
+    //静态编译，不能静态编译时自动改为动态编译
+    public boolean compileStatic;
+    //预编译的脚本包，不为空时直接加载脚本包
+    public String bundle;
 }
@@ -0,0 +1,75 @@
+package com.jsdroid.shell.capture;
+
+import com.jsdroid.utils.ByteUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 截图结果帧：
+ * [总长度:4][名称长度:4][名称][数据长度:4][数据]...
+ * 整数均为小端序，数据不再二次压缩
+ */
+public class CaptureFrame {
+    private static class Part {
+        byte[] name;
+        byte[] data;
+        int offset;
+        int length;
+    }
+
+    private List<Part> parts = new ArrayList<>();
+
+    public void add(String name, byte[] data) {
+        add(name, data, 0, data.length);
+    }
+
+    public void add(String name, byte[] data, int offset, int length) {
+        Part part = new Part();
+        try {
+            part.name = name.getBytes("utf-8");
+        } catch (Exception e) {
+            part.name = name.getBytes();
+        }
+        part.data = data;
+        part.offset = offset;
+        part.length = length;
+        parts.add(part);
+    }
+
+    /**
+     * 不含总长度的字节数
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (Part part : parts) {
+            size += 8 + part.name.length + part.length;
+        }
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(ByteUtil.intToByteArray(size()));
+        writeParts(out);
+        out.flush();
+    }
+
+    /**
+     * 只写各部分，不含总长度，帧模式下由帧头给出长度
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeParts(OutputStream out) throws IOException {
+        for (Part part : parts) {
+            out.write(ByteUtil.intToByteArray(part.name.length));
+            out.write(part.name);
+            out.write(ByteUtil.intToByteArray(part.length));
+            out.write(part.data, part.offset, part.length);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.jsdroid.shell.capture;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.jsdroid.utils.BitmapPool;
+import com.jsdroid.utils.BitmapUtil;
+
+/**
+ * 画面分块哈希：把区域分成GRID*GRID块，每块记录平均亮度，
+ * 比较画面是否变化时只比较这些字节
+ */
+public class FrameHash {
+    public static final int GRID = 16;
+    //哈希截图的最大边长
+    private static final int SAMPLE_SIZE = 64;
+
+    private final byte[] blocks;
+
+    private FrameHash(byte[] blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * 截取区域的缩略图并计算哈希
+     *
+     * @param region
+     * @return 截图失败返回null
+     */
+    public static FrameHash capture(Rect region) {
+        int size = Math.max(region.width(), region.height());
+        float scale = size > SAMPLE_SIZE ? (float) SAMPLE_SIZE / size : 1;
+        Bitmap bitmap = BitmapUtil.takeScreenshot(region, scale);
+        if (bitmap == null) {
+            return null;
+        }
+        FrameHash hash = of(bitmap);
+        BitmapPool.release(bitmap);
+        return hash;
+    }
+
+    public static FrameHash of(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        long[] sums = new long[GRID * GRID];
+        int[] counts = new int[GRID * GRID];
+        for (int y = 0; y < height; y++) {
+            int row = y * GRID / height * GRID;
+            int off = y * width;
+            for (int x = 0; x < width; x++) {
+                int color = pixels[off + x];
+                int light = (((color >> 16) & 0xff) * 299 + ((color >> 8) & 0xff) * 587
+                        + (color & 0xff) * 114) / 1000;
+                int block = row + x * GRID / width;
+                sums[block] += light;
+                counts[block]++;
+            }
+        }
+        byte[] blocks = new byte[GRID * GRID];
+        for (int i = 0; i < blocks.length; i++) {
+            if (counts[i] > 0) {
+                blocks[i] = (byte) (sums[i] / counts[i]);
+            }
+        }
+        return new FrameHash(blocks);
+    }
+
+    /**
+     * 两个哈希的差异
+     *
+     * @param other
+     * @return 0-1，0表示完全相同
+     */
+    public float distance(FrameHash other) {
+        if (other == null) {
+            return 1;
+        }
+        long diff = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            diff += Math.abs((blocks[i] & 0xff) - (other.blocks[i] & 0xff));
+        }
+        return diff / (255f * blocks.length);
+    }
+}
@@ -0,0 +1,67 @@
+package com.jsdroid.shell.capture;
+
+import android.graphics.Bitmap;
+
+import com.jsdroid.shell.bean.CaptureInfo;
+import com.jsdroid.shell.bean.CaptureOption;
+import com.jsdroid.utils.Lz4Util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 按照CaptureOption编码截图
+ */
+public class ImageEncoder {
+
+    /**
+     * 编码图片，并将格式信息写入captureInfo
+     *
+     * @param image
+     * @param option
+     * @param captureInfo
+     * @return
+     */
+    public static byte[] encode(Bitmap image, CaptureOption option, CaptureInfo captureInfo) {
+        String format = option.format == null ? CaptureOption.FORMAT_PNG : option.format;
+        byte[] data;
+        if (CaptureOption.FORMAT_RGB565.equals(format)) {
+            data = rawPixels(image, Bitmap.Config.RGB_565);
+        } else if (CaptureOption.FORMAT_ARGB8888.equals(format)) {
+            data = rawPixels(image, Bitmap.Config.ARGB_8888);
+        } else {
+            Bitmap.CompressFormat compressFormat;
+            if (CaptureOption.FORMAT_JPEG.equals(format)) {
+                compressFormat = Bitmap.CompressFormat.JPEG;
+            } else {
+                format = CaptureOption.FORMAT_PNG;
+                compressFormat = Bitmap.CompressFormat.PNG;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight());
+            image.compress(compressFormat, option.quality, out);
+            captureInfo.imageFormat = format;
+            captureInfo.imageRawLength = out.size();
+            return out.toByteArray();
+        }
+        captureInfo.imageFormat = format;
+        captureInfo.imageRawLength = data.length;
+        if (option.lz4) {
+            captureInfo.imageLz4 = true;
+            return Lz4Util.compress(data);
+        }
+        return data;
+    }
+
+    private static byte[] rawPixels(Bitmap image, Bitmap.Config config) {
+        Bitmap bitmap = image;
+        if (image.getConfig() != config) {
+            bitmap = image.copy(config, false);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(buffer);
+        if (bitmap != image) {
+            bitmap.recycle();
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,188 @@
+package com.jsdroid.shell.capture;
+
+import android.graphics.Bitmap;
+
+import com.jsdroid.utils.BitmapPool;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步保存截图，脚本线程只负责截图，压缩和写文件在后台完成
+ */
+public class ScreenshotWriter {
+    //队列满时等待
+    public static final String POLICY_BLOCK = "block";
+    //队列满时丢弃最旧的截图
+    public static final String POLICY_DROP_OLDEST = "drop_oldest";
+
+    private static final int WORKER_COUNT = 2;
+    private static final int QUEUE_SIZE = 8;
+
+    private static ScreenshotWriter instance;
+
+    public synchronized static ScreenshotWriter getInstance() {
+        if (instance == null) {
+            instance = new ScreenshotWriter();
+        }
+        return instance;
+    }
+
+    private class WriteTask implements Runnable {
+        //提交截图的脚本运行，flush只等待自己的截图
+        Object owner;
+        String file;
+        Bitmap bitmap;
+        Bitmap.CompressFormat format;
+        int quality;
+
+        @Override
+        public void run() {
+            FileOutputStream out = null;
+            try {
+                File parent = new File(file).getParentFile();
+                if (parent != null && !parent.exists()) {
+                    parent.mkdirs();
+                }
+                out = new FileOutputStream(file);
+                bitmap.compress(format, quality, out);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    out.close();
+                } catch (Exception e) {
+                }
+                done(this);
+            }
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Object lock = new Object();
+    //每个提交者未写完的截图数量
+    private final Map<Object, Integer> pending = new HashMap<>();
+    private int dropped;
+    private volatile String policy = POLICY_BLOCK;
+
+    private ScreenshotWriter() {
+        executor = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                onQueueFull((WriteTask) r, executor);
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = POLICY_DROP_OLDEST.equals(policy) ? POLICY_DROP_OLDEST : POLICY_BLOCK;
+    }
+
+    /**
+     * 提交截图，写完后位图归还BitmapPool
+     *
+     * @param owner   提交者，flush时使用
+     * @param file
+     * @param bitmap
+     * @param format
+     * @param quality
+     */
+    public void write(Object owner, String file, Bitmap bitmap, Bitmap.CompressFormat format, int quality) {
+        WriteTask task = new WriteTask();
+        task.owner = owner;
+        task.file = file;
+        task.bitmap = bitmap;
+        task.format = format;
+        task.quality = quality;
+        synchronized (lock) {
+            Integer count = pending.get(owner);
+            pending.put(owner, count == null ? 1 : count + 1);
+        }
+        executor.execute(task);
+    }
+
+    private void onQueueFull(WriteTask task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            done(task);
+            return;
+        }
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        if (POLICY_DROP_OLDEST.equals(policy)) {
+            while (!queue.offer(task)) {
+                Runnable oldest = queue.poll();
+                if (oldest != null) {
+                    synchronized (lock) {
+                        dropped++;
+                    }
+                    done((WriteTask) oldest);
+                }
+            }
+        } else {
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                done(task);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void done(WriteTask task) {
+        BitmapPool.release(task.bitmap);
+        synchronized (lock) {
+            int count = pending.get(task.owner) - 1;
+            if (count == 0) {
+                pending.remove(task.owner);
+            } else {
+                pending.put(task.owner, count);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 等待提交者的截图写完，不等待其它脚本的截图
+     *
+     * @param owner   提交者
+     * @param timeout 超时时间，单位毫秒，0表示一直等待
+     * @return 是否全部写完
+     * @throws InterruptedException
+     */
+    public boolean flush(Object owner, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            while (pending.containsKey(owner)) {
+                if (timeout <= 0) {
+                    lock.wait();
+                } else {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        return false;
+                    }
+                    lock.wait(wait);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 队列满时被丢弃的截图数量
+     *
+     * @return
+     */
+    public int getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.jsdroid.shell.handler;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 非阻塞通道的连接，由选择器线程读取数据，请求在工作线程中处理
+ */
+public class ChannelHandler extends Handler {
+    //每次可读时最多读取的次数，避免单个连接占用选择器
+    private static final int MAX_READS = 16;
+    private final SocketChannel channel;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+
+    public ChannelHandler(final SocketChannel channel) {
+        super(new ISocket() {
+            private final ChannelOutputStream channelOut = new ChannelOutputStream(channel);
+            private final OutputStream out = new BufferedOutputStream(channelOut, 8192);
+
+            @Override
+            public void close() throws IOException {
+                //关闭通道和等待可写的选择器，不刷新缓冲区
+                channelOut.close();
+            }
+
+            @Override
+            public InputStream input() throws IOException {
+                throw new IOException("non-blocking channel");
+            }
+
+            @Override
+            public OutputStream out() throws IOException {
+                return out;
+            }
+        });
+        this.channel = channel;
+    }
+
+    /**
+     * 通道可读
+     *
+     * @return 连接已关闭返回false
+     * @throws IOException
+     */
+    public boolean read() throws IOException {
+        for (int i = 0; i < MAX_READS; i++) {
+            readBuffer.clear();
+            int len = channel.read(readBuffer);
+            if (len < 0) {
+                return false;
+            }
+            if (len == 0) {
+                break;
+            }
+            onRead(readBuffer.array(), 0, len);
+        }
+        return true;
+    }
+}
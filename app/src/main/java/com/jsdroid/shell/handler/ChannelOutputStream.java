@@ -0,0 +1,87 @@
+package com.jsdroid.shell.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 向非阻塞通道写数据，写不进去时等待通道可写，
+ * 超过WRITE_TIMEOUT没有写出任何数据时关闭通道，避免不读数据的客户端一直占用写线程
+ */
+class ChannelOutputStream extends OutputStream {
+    private static final long WRITE_WAIT = 1000;
+    private static final long WRITE_TIMEOUT = 30000;
+    private final SocketChannel channel;
+    //等待可写的选择器，第一次写不进去时创建，关闭时释放
+    private volatile Selector selector;
+
+    ChannelOutputStream(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        long deadline = System.currentTimeMillis() + WRITE_TIMEOUT;
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) > 0) {
+                    deadline = System.currentTimeMillis() + WRITE_TIMEOUT;
+                    continue;
+                }
+                if (!channel.isOpen()) {
+                    throw new IOException("channel closed");
+                }
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    channel.close();
+                    throw new IOException("write timeout");
+                }
+                if (selector == null) {
+                    Selector opened = Selector.open();
+                    try {
+                        channel.register(opened, SelectionKey.OP_WRITE);
+                    } catch (IOException e) {
+                        opened.close();
+                        throw e;
+                    }
+                    selector = opened;
+                }
+                selector.select(Math.min(wait, WRITE_WAIT));
+                selector.selectedKeys().clear();
+            }
+        } catch (ClosedSelectorException e) {
+            throw new IOException("channel closed");
+        } finally {
+            //和close并发时可能在通道关闭后才创建选择器
+            if (!channel.isOpen()) {
+                closeSelector();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            closeSelector();
+        }
+    }
+
+    private void closeSelector() throws IOException {
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.close();
+        }
+    }
+}
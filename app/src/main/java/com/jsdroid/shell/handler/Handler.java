@@ -4,29 +4,46 @@ import android.graphics.Bitmap;
 import android.os.Process;
 
 import com.alibaba.fastjson.JSON;
-import com.jsdroid.shell.Main;
 import com.jsdroid.shell.Server;
 import com.jsdroid.shell.bean.CaptureInfo;
 import com.jsdroid.shell.bean.CaptureOption;
+import com.jsdroid.shell.bean.CompileInfo;
+import com.jsdroid.shell.bean.ConnectionOption;
 import com.jsdroid.shell.bean.Event;
 import com.jsdroid.shell.bean.EventType;
 import com.jsdroid.shell.bean.Script;
+import com.jsdroid.shell.capture.CaptureFrame;
+import com.jsdroid.shell.capture.ImageEncoder;
+import com.jsdroid.shell.metrics.ConnectionMetrics;
+import com.jsdroid.shell.metrics.Metrics;
+import com.jsdroid.shell.protocol.EventEncoder;
+import com.jsdroid.shell.protocol.FrameEncoder;
+import com.jsdroid.shell.protocol.LineEncoder;
+import com.jsdroid.shell.protocol.Protocol;
+import com.jsdroid.shell.protocol.ProtocolDecoder;
+import com.jsdroid.shell.script.Compiler;
+import com.jsdroid.shell.script.CompilerService;
 import com.jsdroid.shell.script.JsDroidScript;
 import com.jsdroid.shell.script.JsDroidScriptFactory;
+import com.jsdroid.shell.script.ScriptCancelledError;
+import com.jsdroid.shell.script.ScriptRun;
+import com.jsdroid.shell.script.ScriptScheduler;
 import com.jsdroid.uiautomator.UiDevice;
 import com.jsdroid.utils.BitmapUtil;
-import com.jsdroid.utils.ByteUtil;
 
-import java.io.BufferedReader;
+import org.apache.commons.io.output.CountingOutputStream;
+
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Handler implements Runnable {
     public interface ISocket {
@@ -38,6 +55,41 @@ public class Handler implements Runnable {
     }
 
     ISocket socket;
+    //收到握手后切换为帧模式
+    private final LineEncoder lineEncoder = new LineEncoder();
+    private EventEncoder encoder = lineEncoder;
+    private FrameEncoder frameEncoder;
+    private final ProtocolDecoder decoder = new ProtocolDecoder(new ProtocolDecoder.Listener() {
+        @Override
+        public void onHandshake(int version) throws IOException {
+            synchronized (Handler.this) {
+                socket.out().write(Protocol.handshake(version));
+                socket.out().flush();
+                frameEncoder = new FrameEncoder();
+                encoder = frameEncoder;
+            }
+        }
+    });
+
+    private final List<Event> events = new ArrayList<>();
+    //当前线程正在读取连接，选择器线程和读取线程发送时不能等待发送队列
+    private static final ThreadLocal<Boolean> reading = new ThreadLocal<Boolean>();
+    //发送队列，单个写任务按顺序合并发送
+    private final OutboundQueue outbound = new OutboundQueue(new OutboundQueue.Writer() {
+        @Override
+        public void write(List<Event> events) throws Exception {
+            send(events);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            closeSocket();
+        }
+    });
+    //发送的字节数，直接包装连接的输出流，不复制数据
+    private CountingOutputStream countingOut;
+    private final ConnectionMetrics metrics = Metrics.open();
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public Handler(ISocket socket) {
         this.socket = socket;
@@ -47,44 +99,142 @@ public class Handler implements Runnable {
     public void run() {
         //处理消息
         try {
-            InputStreamReader reader = new InputStreamReader(socket.input(), "utf-8");
-            BufferedReader bufferedReader = new BufferedReader(reader);
+            InputStream input = socket.input();
+            byte[] buffer = new byte[8192];
             for (; ; ) {
-                String line = bufferedReader.readLine();
-                if (line == null) {
+                int len = input.read(buffer);
+                if (len < 0) {
                     break;
                 }
-                System.out.println(line);
-                Event event = JSON.parseObject(line, Event.class);
-                doEvent(event);
+                onRead(buffer, 0, len);
             }
         } catch (Exception e) {
 
         } finally {
-            try {
-                socket.close();
-            } catch (Exception e) {
+            onClose();
+        }
+    }
+
+    /**
+     * 连接关闭，读取线程、发送失败和主动关闭都经过这里，只执行一次
+     */
+    public void onClose() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        Metrics.close(metrics);
+        outbound.close();
+        try {
+            socket.close();
+        } catch (Exception e) {
+        }
+        synchronized (this) {
+            if (frameEncoder != null) {
+                frameEncoder.close();
+            }
+        }
+    }
+
+    /**
+     * 收到数据，解析出完整的请求后交给工作线程，同一连接只能在一个线程中调用
+     *
+     * @param buffer
+     * @param off
+     * @param len
+     * @throws IOException
+     */
+    public void onRead(byte[] buffer, int off, int len) throws IOException {
+        metrics.addIn(len);
+        decoder.decode(buffer, off, len, events);
+        reading.set(Boolean.TRUE);
+        try {
+            for (Event event : events) {
+                dispatch(event);
             }
+        } finally {
+            reading.remove();
+            events.clear();
         }
     }
 
     public void sendEvent(final Event event) {
-        Server.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    String line = JSON.toJSONString(event);
-                    sendLine(line);
-                } catch (Exception e) {
-                }
+        try {
+            //读取线程中发送时队列已满，说明客户端不读取数据，关闭连接
+            if (!outbound.offer(event, reading.get() == null)) {
+                closeSocket();
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    /**
+     * 合并为一次写入
+     *
+     * @param events
+     * @throws IOException
+     */
+    private synchronized void send(List<Event> events) throws IOException {
+        if (countingOut == null) {
+            countingOut = new CountingOutputStream(socket.out());
+        }
+        //连接的输出流带缓冲，直接编码到输出流，flush时合并为一次写入
+        long count = countingOut.getByteCount();
+        for (Event event : events) {
+            encoder.encode(event, countingOut);
+        }
+        countingOut.flush();
+        metrics.addOut(countingOut.getByteCount() - count);
     }
 
-    public synchronized void sendLine(String line) throws IOException {
-        socket.out().write((line + "\n").getBytes("utf-8"));
-        socket.out().flush();
+    /**
+     * 在线程池中处理请求，读取线程继续读取后续请求，
+     * 同一连接上的多个请求可以同时进行，响应通过id对应
+     *
+     * @param event
+     */
+    private void dispatch(final Event event) {
+        //连接设置在读取线程中处理，保证对之后的请求生效
+        if (event.type == EventType.TYPE_OPTION) {
+            handle(event);
+            return;
+        }
+        try {
+            Server.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    handle(event);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //工作线程已满，通知客户端请求失败
+            event.type = EventType.TYPE_ERROR;
+            event.payload = null;
+            event.data = "server busy";
+            sendEvent(event);
+        }
+    }
+
+    private void handle(Event event) {
+        //处理过程中event.type会被改为响应类型
+        EventType type = event.type;
+        long start = System.nanoTime();
+        boolean error = false;
+        int id = event.id;
+        try {
+            doEvent(event);
+        } catch (Exception e) {
+            error = true;
+            e.printStackTrace();
+            //处理失败也要回复，客户端按请求id等待结果
+            Event reply = new Event();
+            reply.type = EventType.TYPE_ERROR;
+            reply.id = id;
+            reply.data = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+            sendEvent(reply);
+        } finally {
+            Metrics.record(type, start, error);
+        }
     }
 
     private void doEvent(Event event) throws Exception {
@@ -98,36 +248,81 @@ public class Handler implements Runnable {
             case TYPE_CAPTURE:
                 capture(event);
                 break;
+            case TYPE_SCRIPT_LIST:
+                event.payload = null;
+                event.jsonData(ScriptScheduler.list());
+                sendEvent(event);
+                break;
+            case TYPE_COMPILE:
+                compileScript(event);
+                break;
+            case TYPE_COMPILE_REPORT:
+                compileReport(event);
+                break;
+            case TYPE_BUILD_BUNDLE:
+                buildBundle(event);
+                break;
+            case TYPE_UNLOAD_SCRIPT:
+                unloadScript(event);
+                break;
+            case TYPE_METRICS:
+                event.payload = null;
+                event.jsonData(Metrics.snapshot());
+                sendEvent(event);
+                break;
+            case TYPE_POOL_STATS:
+                event.payload = null;
+                event.jsonData(Server.getPoolStats());
+                sendEvent(event);
+                break;
+            case TYPE_OPTION:
+                setOption(event);
+                break;
             case TYPE_STOP_SCRIPT:
-                //只能通过重启服务来停止脚本
-                restart();
+                stopScript(event);
                 break;
         }
     }
 
     /**
-     * 截图
+     * 连接设置
      *
      * @param event
      */
-    private void capture(Event event) {
-        CaptureOption captureOption = JSON.parseObject(event.data, CaptureOption.class);
-        //获取节点
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try {
-            UiDevice.getInstance().dumpWindowHierarchy(outputStream);
-        } catch (Exception e) {
+    private void setOption(Event event) {
+        ConnectionOption option = event.parseData(ConnectionOption.class);
+        if (option == null) {
+            option = new ConnectionOption();
         }
-        try {
-            event.data = outputStream.toString("utf-8");
-        } catch (UnsupportedEncodingException e) {
+        outbound.setOption(option);
+        synchronized (this) {
+            lineEncoder.setRawData(option.rawData);
+            //只在帧模式下压缩，行模式需要保持每行一个json
+            if (ConnectionOption.COMPRESS_DEFLATE.equals(option.compress)
+                    && frameEncoder != null && FrameEncoder.isDeflateSupported()) {
+                frameEncoder.setDeflate(option.compressThreshold);
+            } else if (frameEncoder == null || !frameEncoder.isDeflate()) {
+                option.compress = ConnectionOption.COMPRESS_NONE;
+            }
         }
+        event.payload = null;
+        event.jsonData(option);
+        sendEvent(event);
+    }
+
+    /**
+     * 截图
+     *
+     * @param event
+     */
+    private void capture(Event event) {
+        CaptureOption option = event.parseData(CaptureOption.class);
+        final CaptureOption captureOption = option == null ? new CaptureOption() : option;
+        final long startTime = System.currentTimeMillis();
         //发送截图结果
-        ZipOutputStream zipOut = null;
         try {
-            CaptureInfo captureInfo = new CaptureInfo();
-            // 截图
-            int rotation = UiDevice.getInstance().getRotation();
+            final CaptureInfo captureInfo = new CaptureInfo();
+            final int rotation = UiDevice.getInstance().getRotation();
             int screenWidth = UiDevice.getInstance().getDisplayWidth();
             int screenHeight = UiDevice.getInstance().getDisplayHeight();
             int width;
@@ -148,56 +343,124 @@ public class Handler implements Runnable {
             captureInfo.screenHeight = screenHeight;
             captureInfo.imageWidth = width;
             captureInfo.imageHeight = height;
+            final int imageWidth = width;
+            final int imageHeight = height;
+            // 截图和获取act与节点遍历并行
+            Future<Bitmap> imageFuture = Server.submit(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    long time = System.currentTimeMillis();
+                    try {
+                        return BitmapUtil.takeScreenshot(rotation, imageWidth, imageHeight);
+                    } finally {
+                        captureInfo.screenshotTime = System.currentTimeMillis() - time;
+                    }
+                }
+            });
+            Future<String> actFuture = Server.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    long time = System.currentTimeMillis();
+                    try {
+                        return UiDevice.getInstance().getAct();
+                    } finally {
+                        captureInfo.actTime = System.currentTimeMillis() - time;
+                    }
+                }
+            });
+            // 获取节点，xml与节点来自同一次遍历
+            long hierarchyTime = System.currentTimeMillis();
+            ByteArrayOutputStream hierarchyOut = null;
+            if (captureOption.hierarchy) {
+                hierarchyOut = new ByteArrayOutputStream();
+                captureInfo.nodes = new ArrayList<>();
+                try {
+                    UiDevice.getInstance().dumpWindowHierarchy(hierarchyOut, captureInfo.nodes);
+                } catch (Exception e) {
+                }
+            } else {
+                captureInfo.nodes = UiDevice.getInstance().getNodes();
+            }
+            captureInfo.hierarchyTime = System.currentTimeMillis() - hierarchyTime;
             Bitmap image = null;
             try {
-                image = BitmapUtil.takeScreenshot(rotation, width, height);
+                image = imageFuture.get();
             } catch (Exception e) {
             }
-            // 获取节点
-            captureInfo.nodes = UiDevice.getInstance().getNodes();
-            // 获取act
             try {
-                captureInfo.act = UiDevice.getInstance().getAct();
+                captureInfo.act = actFuture.get();
             } catch (Exception e) {
             }
-            ByteArrayOutputStream zipOutByteStream = new ByteArrayOutputStream();
-            // 发送结果
-            zipOut = new ZipOutputStream(zipOutByteStream);
-            String infoJson = JSON.toJSONString(captureInfo);
-            byte[] infoBytes = infoJson.getBytes();
-            // 发送info
-            ZipEntry entry = new ZipEntry("info");
-            entry.setSize(infoBytes.length);
-            zipOut.putNextEntry(entry);
-            zipOut.write(infoBytes);
+            // 发送结果，图片只编码一次，不再打包压缩
+            CaptureFrame frame = new CaptureFrame();
+            byte[] imageBytes = null;
             if (image != null) {
-                ByteArrayOutputStream bmpOut = new ByteArrayOutputStream();
-                image.compress(Bitmap.CompressFormat.PNG, captureOption.quality,
-                        bmpOut);
-                ZipEntry imageEntry = new ZipEntry("image");
-                imageEntry.setSize(bmpOut.size());
-                zipOut.putNextEntry(imageEntry);
-                zipOut.write(bmpOut.toByteArray());
+                long encodeTime = System.currentTimeMillis();
+                imageBytes = ImageEncoder.encode(image, captureOption, captureInfo);
                 image.recycle();
+                captureInfo.encodeTime = System.currentTimeMillis() - encodeTime;
+            }
+            captureInfo.totalTime = System.currentTimeMillis() - startTime;
+            byte[] infoBytes = JSON.toJSONBytes(captureInfo);
+            byte[] hierarchyBytes = hierarchyOut == null ? null : hierarchyOut.toByteArray();
+            if (decoder.getMode() == Protocol.MODE_FRAME) {
+                //帧模式下截图结果作为一帧返回，连接保持
+                synchronized (this) {
+                    //节点json和布局xml超过阈值时压缩，图片已经编码过，不再压缩
+                    addPart(frame, "info", infoBytes);
+                    if (imageBytes != null) {
+                        frame.add("image", imageBytes);
+                    }
+                    if (hierarchyBytes != null) {
+                        addPart(frame, "hierarchy", hierarchyBytes);
+                    }
+                    FrameEncoder.writeHeader(socket.out(), EventType.TYPE_CAPTURE, 0, event.id, frame.size());
+                    frame.writeParts(socket.out());
+                    metrics.addOut(Protocol.HEADER_SIZE + frame.size());
+                    socket.out().flush();
+                }
+            } else {
+                frame.add("info", infoBytes);
+                if (imageBytes != null) {
+                    frame.add("image", imageBytes);
+                }
+                if (hierarchyBytes != null) {
+                    frame.add("hierarchy", hierarchyBytes);
+                }
+                //和发送队列的写入使用同一个锁，避免数据交错
+                synchronized (this) {
+                    frame.writeTo(socket.out());
+                    socket.out().flush();
+                }
+                metrics.addOut(4 + frame.size());
+                closeSocket();
             }
-            zipOut.close();
-            socket.out().write(
-                    ByteUtil.intToByteArray(zipOutByteStream.size()));
-            socket.out().write(zipOutByteStream.toByteArray());
         } catch (Exception e) {
+            closeSocket();
+        }
+    }
 
-        } finally {
-            try {
-                zipOut.close();
-            } catch (Exception e) {
-            }
-            try {
-                socket.close();
-            } catch (Exception e) {
-            }
+    /**
+     * 加入截图帧的一部分，开启压缩且超过阈值时压缩，调用时需持有锁
+     *
+     * @param frame
+     * @param name
+     * @param data
+     */
+    private void addPart(CaptureFrame frame, String name, byte[] data) {
+        byte[] compressed = frameEncoder.deflatePart(data, 0, data.length);
+        if (compressed == null) {
+            frame.add(name, data);
+        } else {
+            frame.add(name + Protocol.DEFLATE_SUFFIX, compressed);
         }
     }
 
+    private void closeSocket() {
+        //nio连接在工作线程中关闭时选择器不会再回调onClose
+        onClose();
+    }
+
 
     /**
      * 运行脚本
@@ -205,39 +468,192 @@ public class Handler implements Runnable {
      * @param event
      * @throws Exception
      */
-    private void runScript(Event event) {
+    private void runScript(final Event event) {
+        try {
+            Server.runScript(new Runnable() {
+                @Override
+                public void run() {
+                    doRunScript(event);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            event.type = EventType.TYPE_RUN_RESULT;
+            event.payload = null;
+            event.data = "too many scripts";
+            sendEvent(event);
+        }
+    }
+
+    private void doRunScript(Event event) {
+        Script script;
+        try {
+            script = event.parseScript();
+        } catch (Exception e) {
+            script = null;
+        }
+        ScriptRun run = ScriptScheduler.start(event.id, script == null ? null : script.dir);
+        //通知客户端运行id，停止脚本时使用
+        Event start = new Event();
+        start.type = EventType.TYPE_RUN_START;
+        start.id = event.id;
+        start.data = String.valueOf(run.getId());
+        sendEvent(start);
         event.type = EventType.TYPE_RUN_RESULT;
+        //脚本运行时间记录为TYPE_RUN_RESULT
+        long startNanos = System.nanoTime();
+        boolean error = false;
         try {
-            Script script = JSON.parseObject(event.data, Script.class);
-            JsDroidScript jsDroidScript = JsDroidScriptFactory.create(ClassLoader.getSystemClassLoader(), new File(script.dir), new File(script.dir, "dex"), script.text);
+            JsDroidScript jsDroidScript;
+            if (script.bundle != null) {
+                jsDroidScript = JsDroidScriptFactory.createFromBundle(ClassLoader.getSystemClassLoader(), new File(script.dir), new File(script.dir, "dex"), new File(script.bundle), script.compileStatic);
+            } else {
+                jsDroidScript = JsDroidScriptFactory.create(ClassLoader.getSystemClassLoader(), new File(script.dir), new File(script.dir, "dex"), script.text, script.compileStatic);
+            }
+            //静态编译失败改为动态编译时提示
+            for (String warning : jsDroidScript.getCompileWarnings()) {
+                print(event.id, warning);
+            }
+            //运行前发送编译报告
+            Event report = new Event();
+            report.type = EventType.TYPE_COMPILE_REPORT;
+            report.id = event.id;
+            report.jsonData(jsDroidScript.getCompileReport());
+            sendEvent(report);
             jsDroidScript.setHandler(this);
+            jsDroidScript.setRequestId(event.id);
+            jsDroidScript.setScriptRun(run);
             jsDroidScript.setPkg(script.pkg);
             jsDroidScript.dir = script.dir;
             Object result = jsDroidScript.run();
-            event.data = JSON.toJSONString(result);
+            event.jsonData(result);
+        } catch (ScriptCancelledError e) {
+            event.data = e.getMessage();
         } catch (Exception e) {
+            error = true;
             e.printStackTrace();
-            event.data = e.getMessage();
+            event.data = run.isCancelled() ? new ScriptCancelledError().getMessage() : e.getMessage();
+        } finally {
+            ScriptScheduler.finish(run);
+            Metrics.record(EventType.TYPE_RUN_RESULT, startNanos, error);
         }
+        event.payload = null;
         try {
             sendEvent(event);
         } catch (Exception e) {
         }
     }
 
+    /**
+     * 后台预编译脚本，完成后返回CompileInfo
+     *
+     * @param event
+     */
+    private void compileScript(final Event event) {
+        submitCompile(event, new Callable<CompileInfo>() {
+            @Override
+            public CompileInfo call() throws Exception {
+                Script script = event.parseScript();
+                return JsDroidScriptFactory.compile(ClassLoader.getSystemClassLoader(), new File(script.dir), new File(script.dir, "dex"), script.text, script.compileStatic);
+            }
+        });
+    }
+
+    /**
+     * 后台编译脚本包，完成后返回CompileInfo，bundle为脚本包路径
+     *
+     * @param event
+     */
+    private void buildBundle(final Event event) {
+        submitCompile(event, new Callable<CompileInfo>() {
+            @Override
+            public CompileInfo call() throws Exception {
+                Script script = event.parseScript();
+                return JsDroidScriptFactory.buildBundle(ClassLoader.getSystemClassLoader(), new File(script.dir), new File(script.dir, "dex"), script.compileStatic);
+            }
+        });
+    }
 
     /**
-     * 重启服务
+     * 在编译线程中执行，完成或被拒绝时都返回CompileInfo
+     *
+     * @param event
+     * @param task
      */
-    private void restart() {
+    private void submitCompile(final Event event, final Callable<CompileInfo> task) {
         try {
-            Server.close();
-            UiDevice.getInstance().disconnect();
-        } finally {
-            Main.main(new String[]{});
+            Server.compile(new Runnable() {
+                @Override
+                public void run() {
+                    CompileInfo info;
+                    try {
+                        info = task.call();
+                    } catch (Exception e) {
+                        info = new CompileInfo();
+                        info.error = e.getMessage();
+                    }
+                    event.payload = null;
+                    event.jsonData(info);
+                    sendEvent(event);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            CompileInfo info = new CompileInfo();
+            info.error = "too many compiles";
+            event.payload = null;
+            event.jsonData(info);
+            sendEvent(event);
         }
     }
 
+    /**
+     * 脚本工程最近一次编译的报告，数据为脚本目录
+     *
+     * @param event
+     */
+    private void compileReport(Event event) {
+        String dir = event.dataString();
+        Compiler compiler = dir == null ? null : CompilerService.peek(new File(dir.trim()));
+        event.payload = null;
+        event.jsonData(compiler == null ? null : compiler.getReport());
+        sendEvent(event);
+    }
+
+    /**
+     * 释放脚本工程的编译器和已加载的类，数据为脚本目录，为空时释放全部
+     *
+     * @param event
+     */
+    private void unloadScript(Event event) {
+        String dir = event.dataString();
+        int count;
+        if (dir == null || dir.trim().length() == 0) {
+            count = CompilerService.releaseAll();
+        } else {
+            count = CompilerService.release(new File(dir.trim())) ? 1 : 0;
+        }
+        event.payload = null;
+        event.data = String.valueOf(count);
+        sendEvent(event);
+    }
+
+    /**
+     * 停止脚本，数据为运行id，为空时停止所有脚本
+     *
+     * @param event
+     */
+    private void stopScript(Event event) {
+        String data = event.dataString();
+        int count;
+        if (data == null || data.trim().length() == 0) {
+            count = ScriptScheduler.stopAll();
+        } else {
+            count = ScriptScheduler.stop(Integer.parseInt(data.trim())) ? 1 : 0;
+        }
+        event.payload = null;
+        event.data = String.valueOf(count);
+        sendEvent(event);
+    }
+
     /**
      * 退出服务
      */
@@ -252,9 +668,20 @@ public class Handler implements Runnable {
     }
 
     public void print(Object obj) {
+        print(0, obj);
+    }
+
+    /**
+     * 输出日志
+     *
+     * @param requestId 产生日志的请求id
+     * @param obj
+     */
+    public void print(int requestId, Object obj) {
         Event event = new Event();
         event.type = EventType.TYPE_LOG;
-        event.data = JSON.toJSONString(obj);
+        event.id = requestId;
+        event.jsonData(obj);
         sendEvent(event);
     }
 
@@ -2,6 +2,7 @@ package com.jsdroid.shell.handler;
 
 import android.net.LocalSocket;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,6 +11,8 @@ public class LocalSocketHandler extends Handler {
 
     public LocalSocketHandler(final LocalSocket localSocket) {
         super(new ISocket() {
+            private OutputStream out;
+
             @Override
             public void close() throws IOException {
                 localSocket.close();
@@ -21,8 +24,12 @@ public class LocalSocketHandler extends Handler {
             }
 
             @Override
-            public OutputStream out() throws IOException {
-                return localSocket.getOutputStream();
+            public synchronized OutputStream out() throws IOException {
+                //带缓冲，一批事件合并为一次写入
+                if (out == null) {
+                    out = new BufferedOutputStream(localSocket.getOutputStream(), 8192);
+                }
+                return out;
             }
         });
     }
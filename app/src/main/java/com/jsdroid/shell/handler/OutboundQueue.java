@@ -0,0 +1,143 @@
+package com.jsdroid.shell.handler;
+
+import com.jsdroid.shell.Server;
+import com.jsdroid.shell.bean.ConnectionOption;
+import com.jsdroid.shell.bean.Event;
+import com.jsdroid.shell.bean.EventType;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 连接的发送队列：保持顺序，同一时间只有一个写任务，
+ * 每次把队列中所有事件合并为一次写入，写任务只在发送线程中执行
+ */
+class OutboundQueue {
+    interface Writer {
+        void write(List<Event> events) throws Exception;
+
+        void onError(Exception e);
+    }
+
+    private final Writer writer;
+    private final LinkedList<Event> queue = new LinkedList<>();
+    private int capacity = 1024;
+    private String policy = ConnectionOption.POLICY_BLOCK;
+    private boolean scheduled;
+    private boolean closed;
+    private long dropped;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    OutboundQueue(Writer writer) {
+        this.writer = writer;
+    }
+
+    synchronized void setOption(ConnectionOption option) {
+        if (option.outboundCapacity > 0) {
+            capacity = option.outboundCapacity;
+        }
+        if (option.outboundPolicy != null) {
+            policy = option.outboundPolicy;
+        }
+        notifyAll();
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * 加入发送队列
+     *
+     * @param event
+     * @param block 队列满时是否等待，选择器线程和读取线程不能等待
+     * @return 队列已满且不等待时返回false
+     * @throws InterruptedException 阻塞等待时被中断
+     */
+    boolean offer(Event event, boolean block) throws InterruptedException {
+        synchronized (this) {
+            while (!closed && queue.size() >= capacity) {
+                if (event.type == EventType.TYPE_LOG) {
+                    if (ConnectionOption.POLICY_DROP.equals(policy)) {
+                        dropped++;
+                        return true;
+                    }
+                    if (ConnectionOption.POLICY_DROP_OLDEST.equals(policy) && removeOldestLog()) {
+                        dropped++;
+                        break;
+                    }
+                }
+                if (!block) {
+                    return false;
+                }
+                //其他事件不丢弃，等待发送
+                wait();
+            }
+            if (closed) {
+                return true;
+            }
+            queue.add(event);
+            if (scheduled) {
+                return true;
+            }
+            scheduled = true;
+        }
+        try {
+            Server.write(drainTask);
+        } catch (RejectedExecutionException e) {
+            //不在当前线程发送，当前线程可能是选择器线程或会被中断的脚本线程
+            close();
+            writer.onError(e);
+        }
+        return true;
+    }
+
+    private boolean removeOldestLog() {
+        Iterator<Event> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().type == EventType.TYPE_LOG) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        for (; ; ) {
+            List<Event> events;
+            synchronized (this) {
+                if (queue.isEmpty() || closed) {
+                    scheduled = false;
+                    return;
+                }
+                events = new ArrayList<>(queue);
+                queue.clear();
+                notifyAll();
+            }
+            try {
+                writer.write(events);
+            } catch (Exception e) {
+                close();
+                writer.onError(e);
+                return;
+            }
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        queue.clear();
+        scheduled = false;
+        notifyAll();
+    }
+}
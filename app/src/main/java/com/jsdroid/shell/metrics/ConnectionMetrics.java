@@ -0,0 +1,38 @@
+package com.jsdroid.shell.metrics;
+
+import com.jsdroid.shell.bean.ConnectionStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个连接的收发字节数
+ */
+public class ConnectionMetrics {
+    private final int id;
+    private final long openTime = System.currentTimeMillis();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    ConnectionMetrics(int id) {
+        this.id = id;
+    }
+
+    public void addIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+        Metrics.bytesIn.add(bytes);
+    }
+
+    public void addOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+        Metrics.bytesOut.add(bytes);
+    }
+
+    public ConnectionStats stats() {
+        ConnectionStats stats = new ConnectionStats();
+        stats.id = id;
+        stats.openTime = openTime;
+        stats.bytesIn = bytesIn.get();
+        stats.bytesOut = bytesOut.get();
+        return stats;
+    }
+}
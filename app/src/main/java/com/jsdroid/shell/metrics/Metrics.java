@@ -0,0 +1,106 @@
+package com.jsdroid.shell.metrics;
+
+import com.jsdroid.shell.bean.ConnectionStats;
+import com.jsdroid.shell.bean.EventStats;
+import com.jsdroid.shell.bean.EventType;
+import com.jsdroid.shell.bean.MetricsInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 请求统计：每种事件的次数、错误数和延迟分布，连接数和收发字节数
+ */
+public class Metrics {
+    private static final EventType[] TYPES = EventType.values();
+    private static final LatencyHistogram[] latencies = new LatencyHistogram[TYPES.length];
+    private static final StripedCounter[] errors = new StripedCounter[TYPES.length];
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            errors[i] = new StripedCounter();
+        }
+    }
+
+    private static final long startTime = System.currentTimeMillis();
+    private static final AtomicInteger nextId = new AtomicInteger();
+    private static final StripedCounter totalConnections = new StripedCounter();
+    static final StripedCounter bytesIn = new StripedCounter();
+    static final StripedCounter bytesOut = new StripedCounter();
+    private static final Set<ConnectionMetrics> connections = new LinkedHashSet<>();
+
+    /**
+     * 记录一次请求处理
+     *
+     * @param type
+     * @param startNanos 开始时的System.nanoTime()
+     * @param error      是否出错
+     */
+    public static void record(EventType type, long startNanos, boolean error) {
+        if (type == null) {
+            return;
+        }
+        latencies[type.ordinal()].record((System.nanoTime() - startNanos) / 1000);
+        if (error) {
+            errors[type.ordinal()].increment();
+        }
+    }
+
+    /**
+     * 新连接
+     *
+     * @return
+     */
+    public static ConnectionMetrics open() {
+        ConnectionMetrics connection = new ConnectionMetrics(nextId.incrementAndGet());
+        totalConnections.increment();
+        synchronized (connections) {
+            connections.add(connection);
+        }
+        return connection;
+    }
+
+    public static void close(ConnectionMetrics connection) {
+        synchronized (connections) {
+            connections.remove(connection);
+        }
+    }
+
+    public static MetricsInfo snapshot() {
+        MetricsInfo info = new MetricsInfo();
+        info.startTime = startTime;
+        info.totalConnections = totalConnections.sum();
+        info.bytesIn = bytesIn.sum();
+        info.bytesOut = bytesOut.sum();
+        info.events = new ArrayList<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            LatencyHistogram latency = latencies[i];
+            long count = latency.getCount();
+            if (count == 0) {
+                continue;
+            }
+            EventStats stats = new EventStats();
+            stats.type = TYPES[i].name();
+            stats.count = count;
+            stats.errors = errors[i].sum();
+            stats.p50 = latency.getPercentile(50);
+            stats.p99 = latency.getPercentile(99);
+            stats.max = latency.getMax();
+            stats.mean = latency.getMean();
+            info.events.add(stats);
+        }
+        List<ConnectionStats> list = new ArrayList<>();
+        synchronized (connections) {
+            for (ConnectionMetrics connection : connections) {
+                list.add(connection.stats());
+            }
+        }
+        info.connections = list;
+        info.activeConnections = list.size();
+        return info;
+    }
+}
@@ -0,0 +1,33 @@
+package com.jsdroid.shell.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器，不同线程累加到不同的槽，减少竞争，读取时求和
+ * <p>
+ * minSdkVersion 15没有LongAdder
+ */
+public class StripedCounter {
+    private static final int STRIPES = 8;
+    //每个槽占一个缓存行，避免伪共享
+    private static final int PAD = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long x) {
+        int index = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        cells.getAndAdd(index * PAD, x);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+}
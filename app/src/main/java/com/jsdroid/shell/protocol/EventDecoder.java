@@ -0,0 +1,13 @@
+package com.jsdroid.shell.protocol;
+
+import com.jsdroid.shell.bean.Event;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 增量解码，收到多少字节就解析多少，完整的Event放入out
+ */
+public interface EventDecoder {
+    void decode(byte[] buf, int off, int len, List<Event> out) throws IOException;
+}
@@ -0,0 +1,10 @@
+package com.jsdroid.shell.protocol;
+
+import com.jsdroid.shell.bean.Event;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface EventEncoder {
+    void encode(Event event, OutputStream out) throws IOException;
+}
@@ -0,0 +1,78 @@
+package com.jsdroid.shell.protocol;
+
+import com.jsdroid.shell.bean.Event;
+import com.jsdroid.shell.bean.EventType;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 帧模式解码，数据直接复制到Event.payload，不转换为字符串，
+ * 未知类型的帧不分配内存，直接跳过
+ */
+public class FrameDecoder implements EventDecoder {
+    private final byte[] header = new byte[Protocol.HEADER_SIZE];
+    private int headerLength;
+    private Event event;
+    private byte[] payload;
+    private int payloadLength;
+    //当前帧剩余未读取的长度
+    private int remaining;
+
+    @Override
+    public void decode(byte[] buf, int off, int len, List<Event> out) throws IOException {
+        int end = off + len;
+        for (; ; ) {
+            if (headerLength < Protocol.HEADER_SIZE) {
+                if (off >= end) {
+                    return;
+                }
+                int n = Math.min(Protocol.HEADER_SIZE - headerLength, end - off);
+                System.arraycopy(buf, off, header, headerLength, n);
+                headerLength += n;
+                off += n;
+                if (headerLength < Protocol.HEADER_SIZE) {
+                    return;
+                }
+                onHeader();
+            }
+            int n = Math.min(remaining, end - off);
+            if (payload != null) {
+                System.arraycopy(buf, off, payload, payloadLength, n);
+                payloadLength += n;
+            }
+            remaining -= n;
+            off += n;
+            if (remaining > 0) {
+                return;
+            }
+            if (event != null) {
+                event.payload = payload;
+                out.add(event);
+            }
+            event = null;
+            payload = null;
+            headerLength = 0;
+        }
+    }
+
+    private void onHeader() throws IOException {
+        EventType type = EventType.fromCode(header[0] & 0xff);
+        int length = Protocol.readInt(header, 6);
+        if (length < 0 || length > Protocol.maxPayload(type)) {
+            throw new IOException("bad frame length:" + length);
+        }
+        remaining = length;
+        payloadLength = 0;
+        //未知类型的帧跳过
+        if (type == null) {
+            event = null;
+            payload = null;
+            return;
+        }
+        event = new Event();
+        event.type = type;
+        event.id = Protocol.readInt(header, 2);
+        payload = new byte[length];
+    }
+}
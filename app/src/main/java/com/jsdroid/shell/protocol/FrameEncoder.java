@@ -0,0 +1,123 @@
+package com.jsdroid.shell.protocol;
+
+import android.os.Build;
+
+import com.alibaba.fastjson.JSON;
+import com.jsdroid.shell.bean.Event;
+import com.jsdroid.shell.bean.EventType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+public class FrameEncoder implements EventEncoder {
+    private static final byte[] EMPTY = new byte[0];
+
+    //整个连接共用的压缩流，null表示不压缩
+    private Deflater deflater;
+    private int threshold;
+    private final byte[] buffer = new byte[8192];
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+    /**
+     * 是否支持流式压缩，SYNC_FLUSH需要api 19
+     *
+     * @return
+     */
+    public static boolean isDeflateSupported() {
+        return Build.VERSION.SDK_INT >= 19;
+    }
+
+    /**
+     * 开启压缩，之后超过阈值的帧都会压缩
+     *
+     * @param threshold 压缩阈值，单位字节
+     */
+    public void setDeflate(int threshold) {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        this.threshold = threshold;
+    }
+
+    public boolean isDeflate() {
+        return deflater != null;
+    }
+
+    @Override
+    public void encode(Event event, OutputStream out) throws IOException {
+        byte[] payload = event.payload;
+        if (payload == null) {
+            if (event.hasDataObject()) {
+                //对象直接序列化为utf-8字节
+                payload = JSON.toJSONBytes(event.dataObject);
+            } else {
+                payload = event.data == null ? EMPTY : event.data.getBytes("utf-8");
+            }
+        }
+        writeFrame(out, event.type, event.id, payload, 0, payload.length);
+    }
+
+    /**
+     * 写一帧，超过阈值时压缩
+     *
+     * @return 写入的字节数，包括帧头
+     */
+    public int writeFrame(OutputStream out, EventType type, int id, byte[] data, int off, int len) throws IOException {
+        if (!deflate(data, off, len)) {
+            writeHeader(out, type, 0, id, len);
+            out.write(data, off, len);
+            return Protocol.HEADER_SIZE + len;
+        }
+        writeHeader(out, type, Protocol.FLAG_DEFLATE, id, compressed.size());
+        compressed.writeTo(out);
+        return Protocol.HEADER_SIZE + compressed.size();
+    }
+
+    /**
+     * 用连接的压缩流压缩一段数据，用于帧内的部分数据，
+     * 压缩结果必须在下一次压缩之前按顺序写出
+     *
+     * @return 未开启压缩或小于阈值时返回null
+     */
+    public byte[] deflatePart(byte[] data, int off, int len) {
+        if (!deflate(data, off, len)) {
+            return null;
+        }
+        return compressed.toByteArray();
+    }
+
+    private boolean deflate(byte[] data, int off, int len) {
+        if (deflater == null || len < threshold) {
+            return false;
+        }
+        compressed.reset();
+        deflater.setInput(data, off, len);
+        int n;
+        do {
+            n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            compressed.write(buffer, 0, n);
+        } while (n == buffer.length);
+        return true;
+    }
+
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    /**
+     * 写帧头，数据由调用者随后写入
+     */
+    public static void writeHeader(OutputStream out, EventType type, int flags, int id, int length) throws IOException {
+        byte[] header = new byte[Protocol.HEADER_SIZE];
+        header[0] = (byte) type.code();
+        header[1] = (byte) flags;
+        Protocol.writeInt(header, 2, id);
+        Protocol.writeInt(header, 6, length);
+        out.write(header);
+    }
+}
@@ -0,0 +1,67 @@
+package com.jsdroid.shell.protocol;
+
+import com.alibaba.fastjson.JSON;
+import com.jsdroid.shell.bean.Event;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 行模式解码，直接从字节解析json
+ */
+public class LineDecoder implements EventDecoder {
+    private final CharsetDecoder charsetDecoder = Charset.forName("utf-8").newDecoder();
+    private byte[] line = new byte[1024];
+    private int length;
+
+    @Override
+    public void decode(byte[] buf, int off, int len, List<Event> out) throws IOException {
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (buf[i] != '\n') {
+                continue;
+            }
+            if (length == 0) {
+                parse(buf, start, i - start, out);
+            } else {
+                append(buf, start, i - start);
+                parse(line, 0, length, out);
+                length = 0;
+            }
+            start = i + 1;
+        }
+        if (start < end) {
+            append(buf, start, end - start);
+        }
+    }
+
+    private void append(byte[] buf, int off, int len) throws IOException {
+        if (length + len > Protocol.MAX_PAYLOAD) {
+            throw new IOException("line too long");
+        }
+        if (length + len > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + len));
+        }
+        System.arraycopy(buf, off, line, length, len);
+        length += len;
+    }
+
+    private void parse(byte[] buf, int off, int len, List<Event> out) {
+        //去掉\r和空行
+        while (len > 0 && (buf[off + len - 1] == '\r' || buf[off + len - 1] == ' ')) {
+            len--;
+        }
+        if (len == 0) {
+            return;
+        }
+        charsetDecoder.reset();
+        Event event = JSON.parseObject(buf, off, len, charsetDecoder, Event.class);
+        if (event != null && event.type != null) {
+            out.add(event);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.jsdroid.shell.protocol;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.jsdroid.shell.bean.Event;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 行模式编码，直接写入fastjson的线程缓冲区再编码到输出流，
+ * jsonData设置的对象在同一个缓冲区中序列化，不生成中间的json字符串和字节数组
+ */
+public class LineEncoder implements EventEncoder {
+    private static final Charset UTF8 = Charset.forName("utf-8");
+
+    //data已经是json时直接嵌入，不再转义为字符串，需要客户端通过TYPE_OPTION开启
+    private boolean rawData;
+
+    public void setRawData(boolean rawData) {
+        this.rawData = rawData;
+    }
+
+    @Override
+    public void encode(Event event, OutputStream out) throws IOException {
+        SerializeWriter writer = new SerializeWriter();
+        try {
+            //字段顺序和空值处理与JSON.toJSONString(event)一致
+            writer.write('{');
+            String data = event.data;
+            if (event.hasDataObject()) {
+                writer.write("\"data\":");
+                if (rawData) {
+                    new JSONSerializer(writer).write(event.dataObject);
+                } else {
+                    //旧客户端的data是json字符串，需要转义
+                    writer.writeString(JSON.toJSONString(event.dataObject));
+                }
+                writer.write(',');
+            } else if (data != null) {
+                writer.write("\"data\":");
+                if (rawData && event.json) {
+                    writer.write(data);
+                } else {
+                    writer.writeString(data);
+                }
+                writer.write(',');
+            }
+            writer.write("\"id\":");
+            writer.writeInt(event.id);
+            if (event.type != null) {
+                writer.write(",\"type\":");
+                writer.writeString(event.type.name());
+            }
+            writer.write("}\n");
+            writer.writeToEx(out, UTF8);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.jsdroid.shell.protocol;
+
+import com.jsdroid.shell.bean.EventType;
+
+/**
+ * 通信协议
+ * <p>
+ * 行模式：每行一个Event的json，兼容旧客户端
+ * <p>
+ * 帧模式：客户端连接后先发送握手[J][S][D][B][版本]，服务端回复相同格式的握手，
+ * 之后每个Event为一帧：[类型:1][标志:1][请求id:4][长度:4][数据]，整数为小端序，
+ * 类型为EventType.code()，数据为Event.data的utf-8字节，不做json转义
+ * <p>
+ * 运行、编译脚本的请求数据可以是[Script的json][0][脚本原文]，原文为utf-8，不做json转义，
+ * 只有这些请求可以超过MAX_REQUEST，未知类型的帧跳过
+ * <p>
+ * 压缩：通过TYPE_OPTION设置compress=deflate后，超过阈值的帧标志位带FLAG_DEFLATE，
+ * 整个连接共用一个deflate流，每帧以SYNC_FLUSH结束，客户端需按顺序用同一个Inflater解压
+ * <p>
+ * 截图帧整体不压缩，其中超过阈值的文本部分单独压缩，名称加上DEFLATE_SUFFIX，
+ * 和压缩帧共用同一个deflate流，按在连接中出现的顺序解压
+ */
+public class Protocol {
+    public static final int MODE_LINE = 0;
+    public static final int MODE_FRAME = 1;
+
+    public static final byte[] MAGIC = {'J', 'S', 'D', 'B'};
+    public static final int VERSION = 1;
+    public static final int HANDSHAKE_SIZE = MAGIC.length + 1;
+    public static final int HEADER_SIZE = 10;
+    //帧数据为deflate压缩
+    public static final int FLAG_DEFLATE = 1;
+    //截图帧中压缩过的部分的名称后缀
+    public static final String DEFLATE_SUFFIX = ".deflate";
+    //单帧最大长度
+    public static final int MAX_PAYLOAD = 64 * 1024 * 1024;
+    //不带脚本的请求最大长度
+    public static final int MAX_REQUEST = 64 * 1024;
+
+    /**
+     * 客户端请求帧的最大长度
+     *
+     * @param type 未知类型为null
+     * @return
+     */
+    public static int maxPayload(EventType type) {
+        if (type == null) {
+            return MAX_PAYLOAD;
+        }
+        switch (type) {
+            case TYPE_RUN:
+            case TYPE_COMPILE:
+            case TYPE_BUILD_BUNDLE:
+                return MAX_PAYLOAD;
+            default:
+                return MAX_REQUEST;
+        }
+    }
+
+    public static byte[] handshake(int version) {
+        byte[] handshake = new byte[HANDSHAKE_SIZE];
+        System.arraycopy(MAGIC, 0, handshake, 0, MAGIC.length);
+        handshake[MAGIC.length] = (byte) version;
+        return handshake;
+    }
+
+    static int readInt(byte[] buf, int off) {
+        return (buf[off] & 0xff) | (buf[off + 1] & 0xff) << 8
+                | (buf[off + 2] & 0xff) << 16 | (buf[off + 3] & 0xff) << 24;
+    }
+
+    static void writeInt(byte[] buf, int off, int n) {
+        buf[off] = (byte) (n & 0xff);
+        buf[off + 1] = (byte) (n >> 8 & 0xff);
+        buf[off + 2] = (byte) (n >> 16 & 0xff);
+        buf[off + 3] = (byte) (n >> 24 & 0xff);
+    }
+}
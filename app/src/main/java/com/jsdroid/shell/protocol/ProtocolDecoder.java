@@ -0,0 +1,61 @@
+package com.jsdroid.shell.protocol;
+
+import com.jsdroid.shell.bean.Event;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 根据连接开头的字节协商协议：以握手开头为帧模式，否则为行模式
+ */
+public class ProtocolDecoder implements EventDecoder {
+    public interface Listener {
+        /**
+         * 收到帧模式握手
+         *
+         * @param version 双方都支持的版本
+         */
+        void onHandshake(int version) throws IOException;
+    }
+
+    private final Listener listener;
+    private final byte[] prefix = new byte[Protocol.HANDSHAKE_SIZE];
+    private int prefixLength;
+    private EventDecoder decoder;
+    private int mode = -1;
+
+    public ProtocolDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return 未协商完成时返回-1
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    @Override
+    public void decode(byte[] buf, int off, int len, List<Event> out) throws IOException {
+        int end = off + len;
+        while (decoder == null && off < end) {
+            byte b = buf[off];
+            if (prefixLength < Protocol.MAGIC.length && b != Protocol.MAGIC[prefixLength]) {
+                mode = Protocol.MODE_LINE;
+                decoder = new LineDecoder();
+                decoder.decode(prefix, 0, prefixLength, out);
+                break;
+            }
+            prefix[prefixLength++] = b;
+            off++;
+            if (prefixLength == Protocol.HANDSHAKE_SIZE) {
+                mode = Protocol.MODE_FRAME;
+                decoder = new FrameDecoder();
+                listener.onHandshake(Math.min(prefix[Protocol.MAGIC.length] & 0xff, Protocol.VERSION));
+            }
+        }
+        if (decoder != null && off < end) {
+            decoder.decode(buf, off, end - off, out);
+        }
+    }
+}
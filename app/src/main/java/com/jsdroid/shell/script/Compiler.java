@@ -1,5 +1,7 @@
 package com.jsdroid.shell.script;
 
+import android.annotation.TargetApi;
+import android.os.Build;
 import android.util.Log;
 
 import com.android.dx.Version;
@@ -9,52 +11,86 @@ import com.android.dx.dex.cf.CfTranslator;
 import com.android.dx.dex.code.PositionList;
 import com.android.dx.dex.file.ClassDefItem;
 import com.android.dx.dex.file.DexFile;
-import com.jsdroid.shell.script.JsDroidScript;
+import com.jsdroid.shell.ServerPool;
+import com.jsdroid.shell.bean.BundleManifest;
+import com.jsdroid.shell.bean.ClassStats;
+import com.jsdroid.shell.bean.CompileReport;
 
+import org.apache.commons.io.FileUtils;
 import org.codehaus.groovy.ast.ClassNode;
 import org.codehaus.groovy.control.BytecodeProcessor;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.MultipleCompilationErrorsException;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.ProcessingUnit;
 import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.syntax.SyntaxException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
+import java.security.CodeSource;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
 import dalvik.system.DexClassLoader;
+import dalvik.system.InMemoryDexClassLoader;
 import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import groovy.lang.MetaClassRegistry;
+import groovy.transform.CompileStatic;
 import groovyjarjarasm.asm.ClassWriter;
 
 public class Compiler {
     private static final String DEX_IN_JAR_NAME = "classes.dex";
     private static final Attributes.Name CREATED_BY = new Attributes.Name("Created-By");
+    private static final int MAX_SCRIPT_CLASSES = 32;
     private final DexOptions dexOptions;
     private final CfOptions cfOptions;
 
     private final File scriptDir;
     private final File dexDir;
     private final ClassLoader classLoader;
+    private final DexCache dexCache;
+    //编译过的脚本类，以源码哈希为键，按访问顺序淘汰
+    private final Map<String, Class> scriptClasses = new LinkedHashMap<String, Class>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class> eldest) {
+            return size() > MAX_SCRIPT_CLASSES;
+        }
+    };
 
     public Compiler(ClassLoader classLoader, File scriptDir, File dexDir) {
         this.classLoader = classLoader;
         this.scriptDir = scriptDir;
         this.dexDir = dexDir;
+        this.dexCache = new DexCache(dexDir);
         dexOptions = new DexOptions();
         dexOptions.targetApiLevel = 13;
         cfOptions = new CfOptions();
@@ -69,30 +105,326 @@ public class Compiler {
 
     }
 
-    Set<String> classNames;
+    //所有工程共用的编译配置，class转dex由当前线程设置的translator完成，不同工程可以同时编译
+    private static CompilerConfiguration sharedConfig;
+    //静态编译的配置
+    private static CompilerConfiguration staticConfig;
+    private static final ThreadLocal<BytecodeProcessor> translators = new ThreadLocal<BytecodeProcessor>();
+
     CompilerConfiguration config;
     JGroovyClassLoader jGroovyClassLoader;
+    //加载过的类，释放时清除元类
+    private final Set<Class> loadedClasses = Collections.newSetFromMap(new WeakHashMap<Class, Boolean>());
+    //工程的增量编译状态，每种编译模式一个，第一次编译工程时加载
+    private final Map<String, IncrementalBuild> incrementalBuilds = new LinkedHashMap<String, IncrementalBuild>();
+    //工程最近一次编译的报告，不包括eval的代码片段
+    private CompileReport lastReport;
+    //当前线程正在进行的编译，groovy编译阶段的耗时记录到这里
+    private static final ThreadLocal<Compilation> compilations = new ThreadLocal<Compilation>();
+    //dx转换线程，所有工程共用，队列满时在编译线程中转换
+    private static ServerPool translatePool;
 
-    private void init() {
-        classNames = new LinkedHashSet<String>();
-        config = new CompilerConfiguration();
+    /**
+     * 一次编译的报告和警告，随编译结果返回，不保存在编译器中
+     */
+    private static class Compilation {
+        final boolean compileStatic;
+        //eval的代码从内存加载，api 26以下始终写入临时jar
+        boolean inMemoryDex = true;
+        final CompileReport report = new CompileReport();
+        //groovy当前编译阶段的开始时间
+        long groovyPhaseStart;
+        final CompilationUnit.ProgressCallback progressCallback = new CompilationUnit.ProgressCallback() {
+            @Override
+            public void call(ProcessingUnit context, int phase) throws CompilationFailedException {
+                phase("groovy:" + Phases.getDescription(phase), groovyPhaseStart);
+                groovyPhaseStart = System.currentTimeMillis();
+            }
+        };
+
+        Compilation(boolean compileStatic) {
+            this.compileStatic = compileStatic;
+            report.mode = options();
+            report.cached = true;
+        }
+
+        String options() {
+            return compileStatic ? "static" : "dynamic";
+        }
+
+        /**
+         * 记录编译阶段的耗时，同一阶段多次执行时累加
+         *
+         * @param name
+         * @param start 开始时间
+         */
+        void phase(String name, long start) {
+            long time = System.currentTimeMillis() - start;
+            Long old = report.phases.get(name);
+            report.phases.put(name, old == null ? time : old + time);
+        }
+    }
+
+    /**
+     * 一个源文件生成的类
+     */
+    private static class CompiledSource {
+        //translate后生成
+        DexFile dexFile;
+        final Set<String> classNames = new LinkedHashSet<String>();
+        final List<String> filePaths = new ArrayList<String>();
+        final List<byte[]> classBytes = new ArrayList<byte[]>();
+    }
+
+    private static synchronized CompilerConfiguration getSharedConfig(boolean compileStatic) {
+        if (compileStatic) {
+            if (staticConfig == null) {
+                staticConfig = createConfig();
+                staticConfig.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+            }
+            return staticConfig;
+        }
+        if (sharedConfig == null) {
+            sharedConfig = createConfig();
+        }
+        return sharedConfig;
+    }
+
+    private static CompilerConfiguration createConfig() {
+        CompilerConfiguration config = new CompilerConfiguration();
         config.setScriptBaseClass(JsDroidScript.class.getName());
 //        config.setTargetDirectory(scriptDir);
         config.setClasspath(".");
+        config.setBytecodePostprocessor(new BytecodeProcessor() {
+            @Override
+            public byte[] processBytecode(ClassNode classNode, byte[] bytes) {
+                BytecodeProcessor translator = translators.get();
+                return translator == null ? bytes : translator.processBytecode(classNode, bytes);
+            }
+        });
+        return config;
+    }
+
+    private void init() {
+        config = getSharedConfig(false);
+        //每个工程一个子加载器
         jGroovyClassLoader = new JGroovyClassLoader(this.classLoader, config);
 
     }
 
+    /**
+     * 工程在编译模式下的增量编译状态
+     *
+     * @param compilation
+     * @return
+     */
+    private IncrementalBuild incrementalBuild(Compilation compilation) {
+        IncrementalBuild incrementalBuild = incrementalBuilds.get(compilation.options());
+        if (incrementalBuild == null) {
+            incrementalBuild = new IncrementalBuild(dexDir, compilation.options());
+            incrementalBuilds.put(compilation.options(), incrementalBuild);
+        }
+        return incrementalBuild;
+    }
+
+    /**
+     * 解析代码，静态编译失败时改为动态编译
+     *
+     * @param compilation 本次编译，记录耗时和警告
+     * @param loader     动态编译使用的加载器
+     * @param sources    一起编译的文件
+     * @param text
+     * @param name       文件名，可以为null
+     * @param compiled   编译结果
+     * @param bySource   是否按源文件分开
+     */
+    private void parse(Compilation compilation, JGroovyClassLoader loader, List<File> sources, String text, String name,
+                       Map<String, CompiledSource> compiled, boolean bySource) {
+        long start = System.currentTimeMillis();
+        compilation.groovyPhaseStart = start;
+        compilations.set(compilation);
+        try {
+            parseWithFallback(compilation, loader, sources, text, name, compiled, bySource);
+        } finally {
+            compilations.remove();
+            compilation.phase("parse", start);
+        }
+    }
+
+    private void parseWithFallback(Compilation compilation, JGroovyClassLoader loader, List<File> sources, String text, String name,
+                                   Map<String, CompiledSource> compiled, boolean bySource) {
+        if (compilation.compileStatic) {
+            JGroovyClassLoader staticLoader = new JGroovyClassLoader(loader.getParent(), getSharedConfig(true));
+            try {
+                parseWith(staticLoader, sources, text, name, translator(compiled, bySource));
+                return;
+            } catch (CompilationFailedException e) {
+                compiled.clear();
+                //整个编译单元改为动态编译，每个不能静态编译的位置记录一条警告
+                for (String error : staticErrors(e)) {
+                    String warning = "static compilation failed at " + error + ", fallback to dynamic";
+                    Log.w("Compiler", warning);
+                    compilation.report.warnings.add(warning);
+                }
+            }
+        }
+        parseWith(loader, sources, text, name, translator(compiled, bySource));
+    }
+
+    /**
+     * 静态编译失败的位置和原因
+     *
+     * @param e
+     * @return 文件:行:列 原因
+     */
+    private List<String> staticErrors(CompilationFailedException e) {
+        List<String> result = new ArrayList<String>();
+        if (e instanceof MultipleCompilationErrorsException) {
+            for (Object error : ((MultipleCompilationErrorsException) e).getErrorCollector().getErrors()) {
+                if (error instanceof SyntaxErrorMessage) {
+                    SyntaxException cause = ((SyntaxErrorMessage) error).getCause();
+                    String source = cause.getSourceLocator() == null ? "script"
+                            : IncrementalBuild.relative(scriptDir, cause.getSourceLocator());
+                    result.add(source + ":" + cause.getLine() + ":" + cause.getStartColumn() + " " + cause.getOriginalMessage());
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            result.add(e.getMessage());
+        }
+        return result;
+    }
+
+    private static void parseWith(JGroovyClassLoader loader, List<File> sources, String text, String name,
+                                  BytecodeProcessor translator) {
+        loader.setSources(sources);
+        translators.set(translator);
+        try {
+            if (name == null) {
+                loader.parseClass(text);
+            } else {
+                loader.parseClass(text, name);
+            }
+        } finally {
+            translators.remove();
+        }
+    }
+
+    /**
+     * 释放编译器，清除缓存的类和它们的元类，之后这个编译器加载的类可以被回收
+     */
+    public synchronized void close() {
+        scriptClasses.clear();
+        MetaClassRegistry registry = GroovySystem.getMetaClassRegistry();
+        for (Class loadedClass : loadedClasses) {
+            registry.removeMetaClass(loadedClass);
+        }
+        loadedClasses.clear();
+        jGroovyClassLoader.clearCache();
+        jGroovyClassLoader = new JGroovyClassLoader(this.classLoader, config);
+        incrementalBuilds.clear();
+    }
+
+    /**
+     * 动态编译并执行代码
+     *
+     * @param scriptText
+     * @return
+     */
+    public JsDroidScript evaluate(String scriptText, String filename, boolean needImport) throws Exception {
+        return evaluate(scriptText, filename, needImport, false);
+    }
+
     /**
      * 执行代码
      *
      * @param scriptText
+     * @param filename
+     * @param needImport    是否和工程中的其它文件一起编译
+     * @param compileStatic 静态编译，方法调用在编译时绑定，不能静态编译时改为动态编译并记录警告
      * @return
      */
-    public synchronized JsDroidScript evaluate(String scriptText, String filename, boolean needImport) throws Exception {
-        classNames.clear();
-        final DexFile dexFile = new DexFile(dexOptions);
-        config.setBytecodePostprocessor(new BytecodeProcessor() {
+    public JsDroidScript evaluate(String scriptText, String filename, boolean needImport, boolean compileStatic) throws Exception {
+        return evaluate(scriptText, filename, needImport, compileStatic, true);
+    }
+
+    /**
+     * 执行代码
+     *
+     * @param scriptText
+     * @param filename
+     * @param needImport    是否和工程中的其它文件一起编译
+     * @param compileStatic 静态编译
+     * @param inMemoryDex   不需要缓存的代码是否从内存加载，否则写入临时jar，api 26以下始终写入临时jar
+     * @return
+     */
+    public synchronized JsDroidScript evaluate(String scriptText, String filename, boolean needImport, boolean compileStatic, boolean inMemoryDex) throws Exception {
+        Compilation compilation = new Compilation(compileStatic);
+        compilation.inMemoryDex = inMemoryDex;
+        long start = System.currentTimeMillis();
+        try {
+            return doEvaluate(compilation, scriptText, filename, needImport);
+        } finally {
+            compilation.report.totalTime = System.currentTimeMillis() - start;
+            if (needImport && filename != null) {
+                lastReport = compilation.report;
+            }
+        }
+    }
+
+    private JsDroidScript doEvaluate(Compilation compilation, String scriptText, String filename, boolean needImport) throws Exception {
+        if (needImport && filename != null) {
+            return evaluateProject(compilation, scriptText, filename);
+        }
+        String key = null;
+        try {
+            key = DexCache.key(compilation.options(), scriptText, filename, null, null);
+        } catch (Exception e) {
+        }
+        //内存中已经加载过的类
+        if (key != null) {
+            Class scriptClass = scriptClasses.get(key);
+            if (scriptClass != null) {
+                return newScript(compilation, scriptClass);
+            }
+        }
+        //有文件名的脚本使用磁盘缓存，eval的代码片段只缓存在内存中
+        String cacheKey = filename == null ? null : key;
+        if (cacheKey != null) {
+            List<String> cachedNames = dexCache.getClassNames(cacheKey);
+            if (cachedNames != null) {
+                Map<String, Class> classes = loadClasses(Collections.singletonList(dexCache.getJar(cacheKey)), cachedNames);
+                if (classes != null) {
+                    return newScript(compilation, key, classes);
+                }
+            }
+        }
+        Map<String, CompiledSource> compiled = new LinkedHashMap<String, CompiledSource>();
+        //解析代码，加载所有类
+        parse(compilation, jGroovyClassLoader, null, scriptText, filename, compiled, false);
+        CompiledSource source = compiled.get("");
+        if (source == null) {
+            return null;
+        }
+        translate(compilation, compiled);
+        long start = System.currentTimeMillis();
+        byte[] dalvikBytecode = toDex(source.dexFile);
+        compilation.phase("dex", start);
+        compilation.report.dexSize += dalvikBytecode.length;
+        //动态加载类
+        Map<String, Class> classes = defineDynamic(compilation, source.classNames, dalvikBytecode, cacheKey);
+        return newScript(compilation, key, classes);
+    }
+
+    /**
+     * 收集groovy生成的class
+     *
+     * @param out      源文件相对路径 -> 生成的类
+     * @param bySource 是否按源文件分开，否则都放在""中
+     * @return
+     */
+    private BytecodeProcessor translator(final Map<String, CompiledSource> out, final boolean bySource) {
+        return new BytecodeProcessor() {
             @Override
             public byte[] processBytecode(ClassNode classNode, byte[] bytes) {
 //                ClassDefItem classDefItem = CfTranslator.translate(new DirectClassFile(bytes, s+".class", false), bytes, cfOptions, dexOptions, dexFile);
@@ -100,49 +432,463 @@ public class Compiler {
                 String className = classNode.getName();
                 String filePath;
                 if (pkgName != null) {
-                    classNode.getPackageName().replace(".", "/");
                     pkgName = pkgName.replace(".", "/");
                     className = className.substring(pkgName.length() + 1);
                     filePath = pkgName + "/" + className + ".class";
                 } else {
                     filePath = className + ".class";
                 }
-                ClassDefItem classDefItem = CfTranslator.translate(filePath, bytes, cfOptions, dexOptions);
-                dexFile.add(classDefItem);
-                classNames.add(classNode.getName());
+                String sourceName = "";
+                if (bySource && classNode.getModule() != null && classNode.getModule().getContext() != null) {
+                    sourceName = IncrementalBuild.relative(scriptDir, classNode.getModule().getContext().getName());
+                }
+                CompiledSource source = out.get(sourceName);
+                if (source == null) {
+                    source = new CompiledSource();
+                    out.put(sourceName, source);
+                }
+                //只收集class，编译结束后再并行转换为dex
+                source.classNames.add(classNode.getName());
+                source.filePaths.add(filePath);
+                source.classBytes.add(bytes);
                 return bytes;
             }
-        });
-        if (needImport) {
-            jGroovyClassLoader.setDependencyDir(scriptDir);
-        } else {
-            jGroovyClassLoader.setDependencyDir(null);
+        };
+    }
+
+    /**
+     * 并行转换class为dex，按文件路径顺序加入DexFile，结果和线程调度无关
+     *
+     * @param compilation
+     * @param compiled
+     * @throws Exception
+     */
+    private void translate(Compilation compilation, Map<String, CompiledSource> compiled) throws Exception {
+        translate(compilation, compiled, null);
+    }
+
+    /**
+     * 并行转换class为dex，dx的intern表自带同步，CfTranslator.translate可以并发调用，
+     * 只有DexFile不能并发修改，加入和生成dex时锁住DexFile
+     *
+     * @param compilation
+     * @param compiled
+     * @param merged      不为null时所有源文件的类都加入这个DexFile
+     * @throws Exception
+     */
+    private void translate(Compilation compilation, Map<String, CompiledSource> compiled, DexFile merged) throws Exception {
+        CompileReport report = compilation.report;
+        long start = System.currentTimeMillis();
+        report.cached = false;
+        report.sourceCount += compiled.size();
+        List<Future<ClassDefItem>> futures = new ArrayList<Future<ClassDefItem>>();
+        for (Map.Entry<String, CompiledSource> entry : compiled.entrySet()) {
+            CompiledSource source = entry.getValue();
+            for (int i = 0; i < source.filePaths.size(); i++) {
+                final String filePath = source.filePaths.get(i);
+                final byte[] bytes = source.classBytes.get(i);
+                ClassStats stats = new ClassStats();
+                stats.name = filePath.substring(0, filePath.length() - ".class".length()).replace('/', '.');
+                stats.source = entry.getKey();
+                stats.size = bytes.length;
+                report.classes.add(stats);
+                futures.add(getTranslatePool().submit(new Callable<ClassDefItem>() {
+                    @Override
+                    public ClassDefItem call() throws Exception {
+                        return CfTranslator.translate(filePath, bytes, cfOptions, dexOptions);
+                    }
+                }));
+            }
         }
-        //解析代码，加载所有类
-        if (filename == null) {
-            jGroovyClassLoader.parseClass(scriptText);
-        } else {
-            jGroovyClassLoader.parseClass(scriptText, filename);
-        }
-        byte[] dalvikBytecode;
-        //将dexFile编码为dex数据
-        dalvikBytecode = dexFile.toDex(new OutputStreamWriter(new ByteArrayOutputStream()), false);
-        //动态加载类
-        Map<String, Class> classes = defineDynamic(classNames, dalvikBytecode);
+        int index = 0;
+        Map<String, ClassDefItem> mergedItems = new TreeMap<String, ClassDefItem>();
+        for (CompiledSource source : compiled.values()) {
+            Map<String, ClassDefItem> items = merged == null ? new TreeMap<String, ClassDefItem>() : mergedItems;
+            for (String filePath : source.filePaths) {
+                try {
+                    items.put(filePath, futures.get(index++).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+            if (merged == null) {
+                source.dexFile = new DexFile(dexOptions);
+                addAll(source.dexFile, items.values());
+            } else {
+                source.dexFile = merged;
+            }
+        }
+        if (merged != null) {
+            addAll(merged, mergedItems.values());
+        }
+        compilation.phase("translate", start);
+    }
 
-        JsDroidScript script = null;
+    private static void addAll(DexFile dexFile, Collection<ClassDefItem> items) {
+        synchronized (dexFile) {
+            for (ClassDefItem item : items) {
+                dexFile.add(item);
+            }
+        }
+    }
+
+    /**
+     * 将dexFile编码为dex数据
+     *
+     * @param dexFile
+     * @return
+     * @throws IOException
+     */
+    private static byte[] toDex(DexFile dexFile) throws IOException {
+        synchronized (dexFile) {
+            return dexFile.toDex(new OutputStreamWriter(new ByteArrayOutputStream()), false);
+        }
+    }
+
+    private static synchronized ServerPool getTranslatePool() {
+        if (translatePool == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            translatePool = new ServerPool("dx", threads, threads, new LinkedBlockingQueue<Runnable>(256), 256, true);
+        }
+        return translatePool;
+    }
+
+    /**
+     * 工程最近一次编译的报告，各阶段耗时和生成的类，
+     * 单次运行的报告通过JsDroidScript.getCompileReport()获取
+     *
+     * @return
+     */
+    public synchronized CompileReport getReport() {
+        return lastReport;
+    }
+
+    /**
+     * 编译脚本工程，每个文件单独生成dex，只重新编译修改过的文件和依赖它们的文件
+     *
+     * @param scriptText 主脚本
+     * @param filename   主脚本文件名
+     * @return
+     * @throws Exception
+     */
+    private JsDroidScript evaluateProject(Compilation compilation, String scriptText, String filename) throws Exception {
+        IncrementalBuild incrementalBuild = incrementalBuild(compilation);
+        String mainPath = IncrementalBuild.relative(scriptDir, filename);
+        Map<String, String> texts = new LinkedHashMap<String, String>();
+        Map<String, String> names = new LinkedHashMap<String, String>();
+        Map<String, String> hashes = readSources(scriptText, filename, texts, names);
+        String key = projectKey(compilation.options(), hashes);
+        Class scriptClass = scriptClasses.get(key);
+        if (scriptClass != null) {
+            return newScript(compilation, scriptClass);
+        }
+        Set<String> dirty = incrementalBuild.dirty(hashes);
+        if (!dirty.isEmpty()) {
+            compileSources(compilation, incrementalBuild, dirty, hashes, texts, names, mainPath);
+        }
+        incrementalBuild.retain(hashes.keySet());
+        incrementalBuild.save();
+        //所有文件的dex通过同一个加载器加载，主脚本的类在最前
+        List<File> jars = new ArrayList<File>();
+        List<String> classNames = new ArrayList<String>();
+        for (String path : hashes.keySet()) {
+            IncrementalBuild.SourceEntry entry = incrementalBuild.get(path);
+            if (entry.jar != null) {
+                jars.add(new File(dexDir, entry.jar));
+                classNames.addAll(entry.classes);
+            }
+        }
+        long start = System.currentTimeMillis();
+        Map<String, Class> classes = loadClasses(jars, classNames);
+        if (!dirty.isEmpty()) {
+            compilation.phase("load", start);
+        }
+        return newScript(compilation, key, classes);
+    }
+
+    /**
+     * 读取工程的源码，主脚本在最前
+     *
+     * @param scriptText 主脚本
+     * @param filename   主脚本文件名
+     * @param texts      相对路径 -> 源码
+     * @param names      相对路径 -> 文件名
+     * @return 相对路径 -> 哈希
+     * @throws Exception
+     */
+    private Map<String, String> readSources(String scriptText, String filename, Map<String, String> texts,
+                                            Map<String, String> names) throws Exception {
+        String mainPath = IncrementalBuild.relative(scriptDir, filename);
+        texts.put(mainPath, scriptText);
+        names.put(mainPath, filename);
+        for (File file : jGroovyClassLoader.listGroovyFile(scriptDir)) {
+            String path = IncrementalBuild.relative(scriptDir, file.getPath());
+            if (!texts.containsKey(path)) {
+                texts.put(path, FileUtils.readFileToString(file, "utf-8"));
+                names.put(path, file.getPath());
+            }
+        }
+        Map<String, String> hashes = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> text : texts.entrySet()) {
+            hashes.put(text.getKey(), IncrementalBuild.hash(text.getKey(), text.getValue()));
+        }
+        return hashes;
+    }
+
+    /**
+     * 把整个工程编译为一个脚本包，其它设备加载脚本包时不需要groovy编译和dx转换
+     *
+     * @param bundle        输出文件
+     * @param compileStatic 静态编译
+     * @return 编译报告
+     * @throws Exception
+     */
+    public synchronized CompileReport buildBundle(File bundle, boolean compileStatic) throws Exception {
+        Compilation compilation = new Compilation(compileStatic);
+        long start = System.currentTimeMillis();
+        try {
+            File mainFile = new File(scriptDir, ScriptBundle.MAIN);
+            String mainPath = IncrementalBuild.relative(scriptDir, mainFile.getPath());
+            Map<String, String> texts = new LinkedHashMap<String, String>();
+            Map<String, String> names = new LinkedHashMap<String, String>();
+            Map<String, String> hashes = readSources(FileUtils.readFileToString(mainFile, "utf-8"), mainFile.getPath(), texts, names);
+            List<File> sources = new ArrayList<File>();
+            for (String path : names.keySet()) {
+                if (!path.equals(mainPath)) {
+                    sources.add(new File(names.get(path)));
+                }
+            }
+            //所有文件一起编译到一个dex，使用新的加载器，不影响已加载的类
+            JGroovyClassLoader loader = new JGroovyClassLoader(classLoader, config);
+            Map<String, CompiledSource> compiled = new LinkedHashMap<String, CompiledSource>();
+            parse(compilation, loader, sources, texts.get(mainPath), names.get(mainPath), compiled, true);
+            if (compiled.isEmpty()) {
+                throw new IOException("no class compiled");
+            }
+            DexFile dexFile = new DexFile(dexOptions);
+            translate(compilation, compiled, dexFile);
+            long time = System.currentTimeMillis();
+            byte[] dalvikBytecode = toDex(dexFile);
+            compilation.phase("dex", time);
+            compilation.report.dexSize += dalvikBytecode.length;
+            BundleManifest manifest = new BundleManifest();
+            manifest.version = JsDroidScript.VERSION;
+            manifest.dxVersion = Version.VERSION;
+            manifest.groovyVersion = GroovySystem.getVersion();
+            manifest.mode = compilation.options();
+            manifest.main = mainPath;
+            manifest.hashes.putAll(hashes);
+            //主脚本的类在最前
+            for (String path : hashes.keySet()) {
+                CompiledSource source = compiled.get(path);
+                if (source != null) {
+                    manifest.classNames.addAll(source.classNames);
+                }
+            }
+            manifest.resources.addAll(ScriptBundle.listResources(scriptDir, dexDir));
+            manifest.buildTime = System.currentTimeMillis();
+            time = System.currentTimeMillis();
+            ScriptBundle.write(bundle, dalvikBytecode, manifest, scriptDir);
+            compilation.phase("bundle", time);
+            return compilation.report;
+        } finally {
+            compilation.report.totalTime = System.currentTimeMillis() - start;
+            lastReport = compilation.report;
+        }
+    }
+
+    /**
+     * 加载脚本包，版本不同或本地源码已修改时改为编译本地源码
+     *
+     * @param bundle
+     * @param compileStatic 改为编译本地源码时是否静态编译
+     * @return
+     * @throws Exception
+     */
+    public synchronized JsDroidScript evaluateBundle(File bundle, boolean compileStatic) throws Exception {
+        Compilation compilation = new Compilation(compileStatic);
+        compilation.report.mode = "bundle";
+        long start = System.currentTimeMillis();
+        try {
+            String reason;
+            BundleManifest manifest = null;
+            try {
+                manifest = ScriptBundle.readManifest(bundle);
+                reason = checkBundle(manifest);
+            } catch (Exception e) {
+                reason = "invalid bundle: " + e.getMessage();
+            }
+            if (reason == null) {
+                JsDroidScript script = loadBundle(compilation, bundle, manifest);
+                if (script != null) {
+                    return script;
+                }
+                reason = "load bundle failed";
+            }
+            File mainFile = new File(scriptDir, ScriptBundle.MAIN);
+            if (!mainFile.isFile()) {
+                throw new IOException(reason);
+            }
+            compilation.report.mode = compilation.options();
+            JsDroidScript script = doEvaluate(compilation, FileUtils.readFileToString(mainFile, "utf-8"), mainFile.getPath(), true);
+            String warning = reason + ", compiled from source";
+            Log.w("Compiler", warning);
+            compilation.report.warnings.add(0, warning);
+            return script;
+        } finally {
+            compilation.report.totalTime = System.currentTimeMillis() - start;
+            lastReport = compilation.report;
+        }
+    }
+
+    /**
+     * 检查脚本包能否使用，版本和groovy运行时必须一致，本地有源码时必须和打包时的源码一致
+     *
+     * @param manifest
+     * @return 不能使用的原因，可以使用返回null
+     * @throws Exception
+     */
+    private String checkBundle(BundleManifest manifest) throws Exception {
+        if (!JsDroidScript.VERSION.equals(manifest.version)) {
+            return "bundle version " + manifest.version + " not match " + JsDroidScript.VERSION;
+        }
+        //groovy运行时不同，包内类引用的运行时方法可能不存在
+        if (!GroovySystem.getVersion().equals(manifest.groovyVersion)) {
+            return "bundle groovy " + manifest.groovyVersion + " not match " + GroovySystem.getVersion();
+        }
+        if (manifest.classNames == null || manifest.classNames.isEmpty()) {
+            return "empty bundle";
+        }
+        for (File file : jGroovyClassLoader.listGroovyFile(scriptDir)) {
+            String path = IncrementalBuild.relative(scriptDir, file.getPath());
+            String hash = IncrementalBuild.hash(path, FileUtils.readFileToString(file, "utf-8"));
+            if (manifest.hashes == null || !hash.equals(manifest.hashes.get(path))) {
+                return "bundle out of date: " + path;
+            }
+        }
+        return null;
+    }
+
+    private JsDroidScript loadBundle(Compilation compilation, File bundle, BundleManifest manifest) throws Exception {
+        //脚本包替换后重新加载
+        String key = DexCache.key("bundle", bundle.getAbsolutePath() + "\n" + bundle.length() + "\n" + bundle.lastModified(), null, null, null);
+        Class scriptClass = scriptClasses.get(key);
+        if (scriptClass != null) {
+            return newScript(compilation, scriptClass);
+        }
+        long start = System.currentTimeMillis();
+        ScriptBundle.extractResources(bundle, scriptDir);
+        //脚本包本身就是dex jar，直接加载
+        Map<String, Class> classes = loadClasses(Collections.singletonList(bundle), manifest.classNames);
+        compilation.phase("load", start);
+        return newScript(compilation, key, classes);
+    }
+
+    /**
+     * 编译需要更新的文件，未修改的文件通过父加载器提供给groovy编译器
+     */
+    private void compileSources(Compilation compilation, IncrementalBuild incrementalBuild, Set<String> dirty,
+                                Map<String, String> hashes, Map<String, String> texts,
+                                Map<String, String> names, String mainPath) throws Exception {
+        List<File> cleanJars = new ArrayList<File>();
+        for (String path : hashes.keySet()) {
+            IncrementalBuild.SourceEntry entry = incrementalBuild.get(path);
+            if (!dirty.contains(path) && entry.jar != null) {
+                cleanJars.add(new File(dexDir, entry.jar));
+            }
+        }
+        ClassLoader parent = cleanJars.isEmpty() ? classLoader
+                : new DexClassLoader(joinPath(cleanJars), dexDir.getAbsolutePath(), null, classLoader);
+        JGroovyClassLoader loader = new JGroovyClassLoader(parent, config);
+        String entryPath = dirty.contains(mainPath) ? mainPath : dirty.iterator().next();
+        List<File> sources = new ArrayList<File>();
+        for (String path : dirty) {
+            if (!path.equals(entryPath)) {
+                sources.add(new File(names.get(path)));
+            }
+        }
+        Map<String, CompiledSource> compiled = new LinkedHashMap<String, CompiledSource>();
+        parse(compilation, loader, sources, texts.get(entryPath), names.get(entryPath), compiled, true);
+        translate(compilation, compiled);
+        //记录每个文件生成的类和引用的工程类
+        Set<String> projectClasses = incrementalBuild.allClasses();
+        for (CompiledSource source : compiled.values()) {
+            projectClasses.addAll(source.classNames);
+        }
+        for (String path : dirty) {
+            IncrementalBuild.SourceEntry entry = new IncrementalBuild.SourceEntry();
+            entry.hash = hashes.get(path);
+            CompiledSource source = compiled.get(path);
+            if (source != null) {
+                entry.classes.addAll(source.classNames);
+                Set<String> deps = new LinkedHashSet<String>();
+                for (byte[] bytes : source.classBytes) {
+                    IncrementalBuild.findReferences(bytes, projectClasses, deps);
+                }
+                deps.removeAll(source.classNames);
+                entry.deps.addAll(deps);
+                long start = System.currentTimeMillis();
+                byte[] dalvikBytecode = toDex(source.dexFile);
+                compilation.phase("dex", start);
+                compilation.report.dexSize += dalvikBytecode.length;
+                start = System.currentTimeMillis();
+                String jar = "src-" + UUID.randomUUID().toString() + ".jar";
+                writeJar(new File(dexDir, jar), dalvikBytecode);
+                compilation.phase("jar", start);
+                entry.jar = jar;
+            }
+            incrementalBuild.put(path, entry);
+        }
+    }
+
+    private static String projectKey(String options, Map<String, String> hashes) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> hash : new TreeMap<String, String>(hashes).entrySet()) {
+            builder.append(hash.getKey()).append('=').append(hash.getValue()).append('\n');
+        }
+        return DexCache.key(options, builder.toString(), null, null, null);
+    }
+
+    private static String joinPath(List<File> files) {
+        StringBuilder builder = new StringBuilder();
+        for (File file : files) {
+            if (builder.length() > 0) {
+                builder.append(File.pathSeparator);
+            }
+            builder.append(file.getAbsolutePath());
+        }
+        return builder.toString();
+    }
+
+    private JsDroidScript newScript(Compilation compilation, String key, Map<String, Class> classes) {
+        if (classes == null) {
+            return null;
+        }
         for (Class scriptClass : classes.values()) {
             //如果解析的类为Script，则结束运行
             if (JsDroidScript.class.isAssignableFrom(scriptClass)) {
-                try {
-                    script = (JsDroidScript) scriptClass.newInstance();
-                    script.setCompiler(this);
-                } catch (Exception e) {
+                if (key != null) {
+                    scriptClasses.put(key, scriptClass);
                 }
-                break;
+                return newScript(compilation, scriptClass);
             }
         }
-        return script;
+        return null;
+    }
+
+    private JsDroidScript newScript(Compilation compilation, Class scriptClass) {
+        try {
+            JsDroidScript script = (JsDroidScript) scriptClass.newInstance();
+            script.setCompiler(this);
+            script.setCompileReport(compilation.report);
+            return script;
+        } catch (Exception e) {
+        }
+        return null;
     }
 
 
@@ -151,43 +897,122 @@ public class Compiler {
      *
      * @param classNames
      * @param dalvikBytecode
+     * @param cacheKey       不为null时jar保存到缓存，不删除
      * @return
      */
-    private Map<String, Class> defineDynamic(Set<String> classNames, byte[] dalvikBytecode) {
-        File tmpDex = new File(dexDir, UUID.randomUUID().toString() + ".jar");
-        Map<String, Class> result = new LinkedHashMap<String, Class>();
-        try {
-            FileOutputStream fos = null;
-            JarOutputStream jar = null;
-            //将dex写入jar
+    private Map<String, Class> defineDynamic(Compilation compilation, Set<String> classNames, byte[] dalvikBytecode, String cacheKey) {
+        //不需要缓存的代码直接从内存加载，不写文件也不生成odex
+        if (cacheKey == null && compilation.inMemoryDex && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            long start = System.currentTimeMillis();
             try {
-                fos = new FileOutputStream(tmpDex);
-                jar = new JarOutputStream(fos, makeManifest());
-                JarEntry classes = new JarEntry(DEX_IN_JAR_NAME);
-                classes.setSize(dalvikBytecode.length);
-                jar.putNextEntry(classes);
-                jar.write(dalvikBytecode);
-                jar.closeEntry();
-                jar.finish();
+                return loadClasses(dalvikBytecode, classNames);
+            } catch (Throwable e) {
+                Log.e("DynamicLoading", "Unable to load class from memory", e);
             } finally {
-                if (jar != null) {
-                    jar.flush();
-                    jar.close();
-                }
-                if (fos != null) {
-                    fos.flush();
-                    fos.close();
+                compilation.phase("load", start);
+            }
+        }
+        File tmpDex = new File(dexDir, UUID.randomUUID().toString() + ".jar");
+        File dex = tmpDex;
+        try {
+            long start = System.currentTimeMillis();
+            writeJar(tmpDex, dalvikBytecode);
+            if (cacheKey != null) {
+                File cached = dexCache.put(cacheKey, tmpDex, classNames);
+                if (cached != null) {
+                    dex = cached;
                 }
             }
-            DexClassLoader loader = new DexClassLoader(tmpDex.getAbsolutePath(), dexDir.getAbsolutePath(), null, classLoader);
+            compilation.phase("jar", start);
+            start = System.currentTimeMillis();
+            Map<String, Class> classes = loadClasses(Collections.singletonList(dex), classNames);
+            compilation.phase("load", start);
+            return classes;
+        } catch (Throwable e) {
+            Log.e("DynamicLoading", "Unable to load class", e);
+        } finally {
+            tmpDex.delete();
+        }
+        return null;
+    }
+
+    /**
+     * 从内存加载dex
+     *
+     * @param dalvikBytecode
+     * @param classNames
+     * @return
+     * @throws ClassNotFoundException
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private Map<String, Class> loadClasses(byte[] dalvikBytecode, Iterable<String> classNames) throws ClassNotFoundException {
+        Map<String, Class> result = new LinkedHashMap<String, Class>();
+        InMemoryDexClassLoader loader = new InMemoryDexClassLoader(ByteBuffer.wrap(dalvikBytecode), classLoader);
+        for (String className : classNames) {
+            result.put(className, loader.loadClass(className));
+        }
+        loadedClasses.addAll(result.values());
+        return result;
+    }
+
+    /**
+     * 同一工程的临时编译器，不共享已加载的类，用完后close
+     *
+     * @return
+     */
+    Compiler scratch() {
+        return new Compiler(classLoader, scriptDir, dexDir);
+    }
+
+    /**
+     * 将dex写入jar
+     *
+     * @param file
+     * @param dalvikBytecode
+     * @throws IOException
+     */
+    private static void writeJar(File file, byte[] dalvikBytecode) throws IOException {
+        FileOutputStream fos = null;
+        JarOutputStream jar = null;
+        try {
+            fos = new FileOutputStream(file);
+            jar = new JarOutputStream(fos, makeManifest());
+            JarEntry classes = new JarEntry(DEX_IN_JAR_NAME);
+            classes.setSize(dalvikBytecode.length);
+            jar.putNextEntry(classes);
+            jar.write(dalvikBytecode);
+            jar.closeEntry();
+            jar.finish();
+        } finally {
+            if (jar != null) {
+                jar.flush();
+                jar.close();
+            }
+            if (fos != null) {
+                fos.flush();
+                fos.close();
+            }
+        }
+    }
+
+    /**
+     * 从jar加载类，多个jar使用同一个加载器
+     *
+     * @param jars
+     * @param classNames
+     * @return 失败返回null
+     */
+    private Map<String, Class> loadClasses(List<File> jars, Iterable<String> classNames) {
+        Map<String, Class> result = new LinkedHashMap<String, Class>();
+        try {
+            DexClassLoader loader = new DexClassLoader(joinPath(jars), dexDir.getAbsolutePath(), null, classLoader);
             for (String className : classNames) {
                 result.put(className, loader.loadClass(className));
             }
+            loadedClasses.addAll(result.values());
             return result;
         } catch (Throwable e) {
             Log.e("DynamicLoading", "Unable to load class", e);
-        } finally {
-            tmpDex.delete();
         }
         return null;
     }
@@ -232,6 +1057,15 @@ public class Compiler {
             }
         }
 
+        /**
+         * 和主脚本一起编译的文件
+         *
+         * @param files
+         */
+        public void setSources(List<File> files) {
+            dependenciesFiles = files == null ? null : files.toArray(new File[files.size()]);
+        }
+
         public JGroovyClassLoader(ClassLoader loader, CompilerConfiguration config) {
             super(loader, config);
         }
@@ -241,6 +1075,17 @@ public class Compiler {
             return super.parseClass(text, fileName);
         }
 
+        @Override
+        protected CompilationUnit createCompilationUnit(CompilerConfiguration config, CodeSource source) {
+            CompilationUnit unit = super.createCompilationUnit(config, source);
+            //记录各编译阶段的耗时
+            Compilation compilation = compilations.get();
+            if (compilation != null) {
+                unit.setProgressCallback(compilation.progressCallback);
+            }
+            return unit;
+        }
+
         @Override
         protected ClassCollector createCollector(CompilationUnit unit, SourceUnit su) {
             InnerLoader loader = AccessController.doPrivileged(new PrivilegedAction<InnerLoader>() {
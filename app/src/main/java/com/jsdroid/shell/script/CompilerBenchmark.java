@@ -0,0 +1,82 @@
+package com.jsdroid.shell.script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 编译相关的性能测试：eval编译加载耗时，静态编译和动态编译的运行速度，
+ * 在临时编译器中进行，不影响正在运行的脚本，也不挤掉工程已加载的类
+ */
+public class CompilerBenchmark {
+
+    /**
+     * 每次在代码后加上不同的注释，避免命中已编译类的缓存
+     *
+     * @param compiler
+     * @param code
+     * @param times    每种方式的次数
+     * @return 平均耗时，单位毫秒
+     * @throws Exception
+     */
+    public static Map<String, Double> evalLatency(Compiler compiler, String code, int times) throws Exception {
+        Map<String, Double> result = new LinkedHashMap<>();
+        Compiler scratch = compiler.scratch();
+        try {
+            result.put("file", measure(scratch, code, times, "file", false));
+            result.put("memory", measure(scratch, code, times, "memory", true));
+        } finally {
+            scratch.close();
+        }
+        return result;
+    }
+
+    private static double measure(Compiler compiler, String code, int times, String tag, boolean inMemoryDex) throws Exception {
+        //第一次编译包含groovy初始化，不计入
+        compiler.evaluate(code + "\n//" + tag + " warm", null, false, false, inMemoryDex);
+        long start = System.nanoTime();
+        for (int i = 0; i < times; i++) {
+            compiler.evaluate(code + "\n//" + tag + " " + i + " " + start, null, false, false, inMemoryDex);
+        }
+        return (System.nanoTime() - start) / 1e6 / Math.max(times, 1);
+    }
+
+    /**
+     * 同一段循环分别用动态编译和静态编译执行
+     *
+     * @param compiler
+     * @param iterations 循环次数
+     * @return 每毫秒循环次数
+     * @throws Exception
+     */
+    public static Map<String, Double> loopThroughput(Compiler compiler, int iterations) throws Exception {
+        String code = "int n = " + iterations + "\n"
+                + "int color = 0\n"
+                + "for (int i = 0; i < n; i++) {\n"
+                + "    int r = (i >> 16) & 0xff\n"
+                + "    int g = (i >> 8) & 0xff\n"
+                + "    int b = i & 0xff\n"
+                + "    if (Math.abs(r - g) < 16 && Math.abs(g - b) < 16) {\n"
+                + "        color += r + g + b\n"
+                + "    }\n"
+                + "}\n"
+                + "return color\n";
+        Map<String, Double> result = new LinkedHashMap<>();
+        Compiler scratch = compiler.scratch();
+        try {
+            result.put("dynamic", run(scratch.evaluate(code, null, false, false), iterations));
+            result.put("static", run(scratch.evaluate(code, null, false, true), iterations));
+        } finally {
+            scratch.close();
+        }
+        return result;
+    }
+
+    private static double run(JsDroidScript script, int iterations) {
+        //先运行一次让调用点初始化
+        script.run();
+        long start = System.nanoTime();
+        script.run();
+        double ms = (System.nanoTime() - start) / 1e6;
+        return iterations / Math.max(ms, 0.001);
+    }
+}
@@ -0,0 +1,100 @@
+package com.jsdroid.shell.script;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 长期保留的编译器，每个脚本工程一个，多次运行共用已加载的类，
+ * 不同工程可以同时编译，超过数量时释放最久未使用的工程
+ */
+public class CompilerService {
+    private static final int MAX_PROJECTS = 4;
+
+    private static final LinkedHashMap<String, Compiler> compilers = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 获取工程的编译器，不存在时创建
+     *
+     * @param classLoader 父加载器
+     * @param scriptDir   工程目录
+     * @param dexDir      dex目录
+     * @return
+     */
+    public static Compiler get(ClassLoader classLoader, File scriptDir, File dexDir) {
+        String key = scriptDir.getAbsolutePath();
+        List<Compiler> evicted = new ArrayList<>();
+        Compiler compiler;
+        synchronized (compilers) {
+            compiler = compilers.get(key);
+            if (compiler == null) {
+                dexDir.mkdir();
+                dexDir.setExecutable(true);
+                dexDir.setReadable(true);
+                dexDir.setWritable(true);
+                compiler = new Compiler(classLoader, scriptDir, dexDir);
+                compilers.put(key, compiler);
+                Iterator<Map.Entry<String, Compiler>> iterator = compilers.entrySet().iterator();
+                while (compilers.size() > MAX_PROJECTS && iterator.hasNext()) {
+                    evicted.add(iterator.next().getValue());
+                    iterator.remove();
+                }
+            }
+        }
+        //在锁外释放，正在编译的工程需要等待编译结束
+        for (Compiler old : evicted) {
+            old.close();
+        }
+        return compiler;
+    }
+
+    /**
+     * 获取已经存在的编译器
+     *
+     * @param scriptDir
+     * @return 不存在返回null
+     */
+    public static Compiler peek(File scriptDir) {
+        synchronized (compilers) {
+            return compilers.get(scriptDir.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 释放工程的编译器和已加载的类，正在运行的脚本不受影响
+     *
+     * @param scriptDir
+     * @return 是否存在
+     */
+    public static boolean release(File scriptDir) {
+        Compiler compiler;
+        synchronized (compilers) {
+            compiler = compilers.remove(scriptDir.getAbsolutePath());
+        }
+        if (compiler == null) {
+            return false;
+        }
+        compiler.close();
+        return true;
+    }
+
+    /**
+     * 释放所有编译器
+     *
+     * @return 释放的数量
+     */
+    public static int releaseAll() {
+        List<Compiler> list;
+        synchronized (compilers) {
+            list = new ArrayList<>(compilers.values());
+            compilers.clear();
+        }
+        for (Compiler compiler : list) {
+            compiler.close();
+        }
+        return list.size();
+    }
+}
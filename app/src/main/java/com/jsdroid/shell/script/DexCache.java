@@ -0,0 +1,190 @@
+package com.jsdroid.shell.script;
+
+import com.android.dx.Version;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import groovy.lang.GroovySystem;
+
+/**
+ * 编译结果的磁盘缓存，以源码、编译器版本和JsDroidScript.VERSION的哈希为键，
+ * 命中时直接加载缓存的dex，不再执行groovy编译和dx转换
+ * <p>
+ * 每个键对应两个文件：[键].jar为dex，[键].classes为类名列表，每行一个
+ */
+public class DexCache {
+    private static final String JAR_SUFFIX = ".jar";
+    private static final String CLASSES_SUFFIX = ".classes";
+    //最多保留的编译结果
+    private static final int MAX_ENTRIES = 16;
+
+    private final File dir;
+
+    public DexCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @param options    编译选项
+     * @param scriptText 主脚本
+     * @param filename   主脚本文件名
+     * @param baseDir    依赖文件所在目录，用于计算相对路径
+     * @param files      依赖文件
+     * @return
+     * @throws Exception
+     */
+    public static String key(String options, String scriptText, String filename, File baseDir, File[] files) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        update(digest, options);
+        update(digest, JsDroidScript.VERSION);
+        update(digest, Version.VERSION);
+        update(digest, GroovySystem.getVersion());
+        update(digest, filename);
+        update(digest, scriptText);
+        if (files != null) {
+            File[] sorted = files.clone();
+            Arrays.sort(sorted, new Comparator<File>() {
+                @Override
+                public int compare(File o1, File o2) {
+                    return o1.getPath().compareTo(o2.getPath());
+                }
+            });
+            String base = baseDir == null ? "" : baseDir.getAbsolutePath();
+            for (File file : sorted) {
+                String path = file.getAbsolutePath();
+                if (path.startsWith(base)) {
+                    path = path.substring(base.length());
+                }
+                update(digest, path);
+                digest.update(FileUtils.readFileToByteArray(file));
+                digest.update((byte) 0);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String text) throws Exception {
+        if (text != null) {
+            digest.update(text.getBytes("utf-8"));
+        }
+        digest.update((byte) 0);
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit(b >> 4 & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    public File getJar(String key) {
+        return new File(dir, key + JAR_SUFFIX);
+    }
+
+    /**
+     * 读取缓存的类名
+     *
+     * @param key
+     * @return 未命中返回null
+     */
+    public List<String> getClassNames(String key) {
+        File jar = getJar(key);
+        File classes = new File(dir, key + CLASSES_SUFFIX);
+        if (!jar.isFile() || !classes.isFile()) {
+            return null;
+        }
+        try {
+            List<String> names = new ArrayList<>();
+            for (String line : FileUtils.readLines(classes, "utf-8")) {
+                if (line.length() > 0) {
+                    names.add(line);
+                }
+            }
+            //更新时间，清理时保留最近使用的
+            long now = System.currentTimeMillis();
+            jar.setLastModified(now);
+            classes.setLastModified(now);
+            return names;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 保存编译结果，jar由调用者先写入临时文件再传入，类名列表最后写入，
+     * 中途失败不会留下可以命中的缓存
+     *
+     * @param key
+     * @param tmpJar
+     * @param classNames
+     * @return 缓存的jar，失败返回null
+     */
+    public File put(String key, File tmpJar, Iterable<String> classNames) {
+        File jar = getJar(key);
+        File classes = new File(dir, key + CLASSES_SUFFIX);
+        File tmpClasses = new File(dir, key + CLASSES_SUFFIX + ".tmp");
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (String className : classNames) {
+                builder.append(className).append('\n');
+            }
+            FileUtils.writeStringToFile(tmpClasses, builder.toString(), "utf-8");
+            if (!tmpJar.renameTo(jar) || !tmpClasses.renameTo(classes)) {
+                jar.delete();
+                tmpClasses.delete();
+                return null;
+            }
+        } catch (Exception e) {
+            tmpClasses.delete();
+            return null;
+        }
+        prune();
+        return jar;
+    }
+
+    /**
+     * 删除最久未使用的缓存
+     */
+    private void prune() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> entries = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(CLASSES_SUFFIX)) {
+                entries.add(file);
+            }
+        }
+        if (entries.size() <= MAX_ENTRIES) {
+            return;
+        }
+        File[] sorted = entries.toArray(new File[entries.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long d = o2.lastModified() - o1.lastModified();
+                return d > 0 ? 1 : d < 0 ? -1 : 0;
+            }
+        });
+        for (int i = MAX_ENTRIES; i < sorted.length; i++) {
+            String name = sorted[i].getName();
+            String key = name.substring(0, name.length() - CLASSES_SUFFIX.length());
+            sorted[i].delete();
+            getJar(key).delete();
+            //DexClassLoader生成的优化文件
+            new File(dir, key + ".dex").delete();
+        }
+    }
+}
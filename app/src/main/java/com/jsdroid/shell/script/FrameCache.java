@@ -0,0 +1,34 @@
+package com.jsdroid.shell.script;
+
+import android.graphics.Bitmap;
+
+import com.jsdroid.utils.BitmapUtil;
+
+/**
+ * 脚本共享的全屏截图，时间间隔内多次截图只截一次，
+ * 共享的位图只读，使用者不能回收
+ */
+public class FrameCache {
+    private static Bitmap frame;
+    private static long frameTime;
+
+    /**
+     * 获取截图
+     *
+     * @param maxAge 可以接受的截图时间，单位毫秒
+     * @return
+     */
+    public synchronized static Bitmap get(long maxAge) {
+        long now = System.currentTimeMillis();
+        if (frame == null || now - frameTime > maxAge) {
+            Bitmap bitmap = BitmapUtil.takeScreenshot();
+            if (bitmap == null) {
+                return null;
+            }
+            //旧的截图可能还在被其他脚本使用，交给gc回收
+            frame = bitmap;
+            frameTime = now;
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,290 @@
+package com.jsdroid.shell.script;
+
+import com.alibaba.fastjson.JSON;
+import com.android.dx.Version;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import groovy.lang.GroovySystem;
+
+/**
+ * 脚本工程的增量编译状态
+ * <p>
+ * 每个groovy文件单独生成一个dex jar，记录文件哈希、生成的类和引用的工程类，
+ * 只重新编译修改过的文件和依赖它们的文件，其余文件直接使用上次的jar
+ */
+class IncrementalBuild {
+    private static final String STATE_FILE = "incremental";
+
+    public static class SourceEntry {
+        //文件内容哈希
+        public String hash;
+        //dex jar文件名，在dexDir下
+        public String jar;
+        //生成的类，第一个为文件对应的类
+        public List<String> classes = new ArrayList<>();
+        //引用的其它文件的类
+        public List<String> deps = new ArrayList<>();
+    }
+
+    public static class State {
+        //编译器版本和选项，不同时全部重新编译
+        public String version;
+        //相对路径 -> 编译结果
+        public Map<String, SourceEntry> files = new LinkedHashMap<>();
+    }
+
+    private final File dexDir;
+    //编译选项，不同时全部重新编译
+    private final String options;
+    private State state;
+
+    IncrementalBuild(File dexDir, String options) {
+        this.dexDir = dexDir;
+        this.options = options;
+        load();
+    }
+
+    private String version() {
+        return JsDroidScript.VERSION + "/" + Version.VERSION + "/" + GroovySystem.getVersion() + "/" + options;
+    }
+
+    //不同编译模式的状态分开保存，切换模式不需要全部重新编译
+    private File stateFile() {
+        return new File(dexDir, STATE_FILE + "-" + options + ".json");
+    }
+
+    private void load() {
+        File file = stateFile();
+        try {
+            if (file.isFile()) {
+                state = JSON.parseObject(FileUtils.readFileToString(file, "utf-8"), State.class);
+            }
+        } catch (Exception e) {
+            state = null;
+        }
+        if (state == null || state.files == null || !version().equals(state.version)) {
+            state = new State();
+            state.version = version();
+        }
+    }
+
+    void save() {
+        File file = stateFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(tmp, JSON.toJSONString(state), "utf-8");
+            tmp.renameTo(file);
+        } catch (Exception e) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * 相对脚本目录的路径
+     *
+     * @param scriptDir
+     * @param path
+     * @return
+     */
+    static String relative(File scriptDir, String path) {
+        String base = scriptDir.getAbsolutePath() + File.separator;
+        String absolute = new File(path).getAbsolutePath();
+        if (absolute.startsWith(base)) {
+            return absolute.substring(base.length());
+        }
+        return absolute;
+    }
+
+    static String hash(String relative, String text) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(relative.getBytes("utf-8"));
+        digest.update((byte) 0);
+        digest.update(text.getBytes("utf-8"));
+        return DexCache.hex(digest.digest());
+    }
+
+    /**
+     * 需要重新编译的文件：新增或修改的文件、jar丢失的文件，
+     * 以及引用了这些文件或已删除文件中的类的文件
+     *
+     * @param hashes 当前的文件，相对路径 -> 哈希
+     * @return
+     */
+    Set<String> dirty(Map<String, String> hashes) {
+        Set<String> dirty = new LinkedHashSet<>();
+        Set<String> changedClasses = new HashSet<>();
+        for (Map.Entry<String, SourceEntry> entry : state.files.entrySet()) {
+            if (!hashes.containsKey(entry.getKey())) {
+                changedClasses.addAll(entry.getValue().classes);
+            }
+        }
+        for (Map.Entry<String, String> file : hashes.entrySet()) {
+            SourceEntry entry = state.files.get(file.getKey());
+            if (entry == null || !file.getValue().equals(entry.hash)
+                    || entry.jar != null && !new File(dexDir, entry.jar).isFile()) {
+                dirty.add(file.getKey());
+                if (entry != null) {
+                    changedClasses.addAll(entry.classes);
+                }
+            }
+        }
+        //依赖传递
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String path : hashes.keySet()) {
+                if (dirty.contains(path)) {
+                    continue;
+                }
+                SourceEntry entry = state.files.get(path);
+                for (String dep : entry.deps) {
+                    if (changedClasses.contains(dep)) {
+                        dirty.add(path);
+                        changedClasses.addAll(entry.classes);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return dirty;
+    }
+
+    SourceEntry get(String path) {
+        return state.files.get(path);
+    }
+
+    /**
+     * 所有文件生成的类
+     *
+     * @return
+     */
+    Set<String> allClasses() {
+        Set<String> classes = new HashSet<>();
+        for (SourceEntry entry : state.files.values()) {
+            classes.addAll(entry.classes);
+        }
+        return classes;
+    }
+
+    /**
+     * 更新文件的编译结果，删除旧的jar
+     *
+     * @param path
+     * @param entry
+     */
+    void put(String path, SourceEntry entry) {
+        SourceEntry old = state.files.put(path, entry);
+        if (old != null && old.jar != null && !old.jar.equals(entry.jar)) {
+            deleteJar(old.jar);
+        }
+    }
+
+    /**
+     * 删除已经不存在的文件的编译结果
+     *
+     * @param paths 当前的文件
+     */
+    void retain(Collection<String> paths) {
+        List<String> removed = new ArrayList<>();
+        for (String path : state.files.keySet()) {
+            if (!paths.contains(path)) {
+                removed.add(path);
+            }
+        }
+        for (String path : removed) {
+            SourceEntry entry = state.files.remove(path);
+            if (entry.jar != null) {
+                deleteJar(entry.jar);
+            }
+        }
+    }
+
+    private void deleteJar(String jar) {
+        new File(dexDir, jar).delete();
+        //DexClassLoader生成的优化文件
+        new File(dexDir, jar.substring(0, jar.length() - ".jar".length()) + ".dex").delete();
+    }
+
+    /**
+     * 从class文件常量池中找出引用的类，包括类常量和描述符中的类型
+     *
+     * @param bytes   class文件
+     * @param classes 工程中的类
+     * @param out     引用到的工程类
+     */
+    static void findReferences(byte[] bytes, Set<String> classes, Set<String> out) {
+        try {
+            int count = readU2(bytes, 8);
+            int pos = 10;
+            for (int i = 1; i < count; i++) {
+                int tag = bytes[pos] & 0xff;
+                switch (tag) {
+                    case 1: {
+                        int length = readU2(bytes, pos + 1);
+                        String text = new String(bytes, pos + 3, length, "utf-8");
+                        addReference(text, classes, out);
+                        pos += 3 + length;
+                        break;
+                    }
+                    case 5:
+                    case 6:
+                        pos += 9;
+                        i++;
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        pos += 3;
+                        break;
+                    case 15:
+                        pos += 4;
+                        break;
+                    default:
+                        pos += 5;
+                        break;
+                }
+            }
+        } catch (Exception e) {
+        }
+    }
+
+    private static void addReference(String text, Set<String> classes, Set<String> out) {
+        String name = text.replace('/', '.');
+        if (classes.contains(name)) {
+            out.add(name);
+            return;
+        }
+        //描述符中的类型：Lcom/a/B;
+        int start = name.indexOf('L');
+        while (start >= 0) {
+            int end = name.indexOf(';', start);
+            if (end < 0) {
+                break;
+            }
+            String type = name.substring(start + 1, end);
+            if (classes.contains(type)) {
+                out.add(type);
+            }
+            start = name.indexOf('L', start + 1);
+        }
+    }
+
+    private static int readU2(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xff) << 8 | (bytes[pos + 1] & 0xff);
+    }
+}
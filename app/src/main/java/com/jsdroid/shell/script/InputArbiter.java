@@ -0,0 +1,69 @@
+package com.jsdroid.shell.script;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多个脚本同时运行时的输入仲裁：公平锁按请求顺序轮流注入，
+ * touchDown到touchUp之间一直持有，避免手势交错
+ */
+public class InputArbiter {
+    private static final ReentrantLock lock = new ReentrantLock(true);
+    //当前线程是否在touchDown到touchUp之间，一次手势只持有一次输入权
+    private static final ThreadLocal<Boolean> gesture = new ThreadLocal<Boolean>();
+
+    /**
+     * 获取输入权
+     *
+     * @throws InterruptedException
+     */
+    public static void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+    }
+
+    /**
+     * touchDown时获取输入权，手势进行中重复按下不再获取
+     *
+     * @throws InterruptedException
+     */
+    public static void beginGesture() throws InterruptedException {
+        if (gesture.get() == null) {
+            acquire();
+            gesture.set(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * touchUp时释放beginGesture获取的输入权，没有按下时不释放
+     */
+    public static void endGesture() {
+        if (gesture.get() != null) {
+            gesture.remove();
+            release();
+        }
+    }
+
+    public static void release() {
+        if (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放当前线程持有的所有输入权，脚本结束时调用
+     */
+    public static void releaseAll() {
+        gesture.remove();
+        while (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前线程是否持有输入权
+     *
+     * @return
+     */
+    public static boolean isHeld() {
+        return lock.isHeldByCurrentThread();
+    }
+}
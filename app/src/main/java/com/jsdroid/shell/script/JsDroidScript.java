@@ -10,17 +10,22 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.os.RemoteException;
 
 import com.jsdroid.findimg.FindImg;
 import com.jsdroid.findpic.FindPic;
 import com.jsdroid.input.InputMethod;
 import com.jsdroid.service.ProxyServiceManager;
+import com.jsdroid.shell.bean.CompileReport;
+import com.jsdroid.shell.capture.FrameHash;
+import com.jsdroid.shell.capture.ScreenshotWriter;
 import com.jsdroid.shell.handler.Handler;
 import com.jsdroid.uiautomator.BySelector;
 import com.jsdroid.uiautomator.PointerGesture;
 import com.jsdroid.uiautomator.UiDevice;
 import com.jsdroid.uiautomator.UiObject2;
+import com.jsdroid.utils.BitmapPool;
 import com.jsdroid.utils.BitmapUtil;
 import com.jsdroid.utils.FileUtil;
 import com.jsdroid.utils.HttpUtil;
@@ -30,15 +35,20 @@ import org.apache.commons.io.FileUtils;
 import org.codehaus.groovy.control.CompilationFailedException;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import groovy.lang.Script;
 
 public abstract class JsDroidScript extends Script {
     public static final String VERSION = "2.0";
+    //waitForScreenStable使用的差异阈值
+    private static final float STABLE_THRESHOLD = 0.005f;
+    //lockScreen共用截图的有效时间，单位毫秒
+    private static final long SHARED_FRAME_AGE = 50;
 
     public interface IApp {
 
@@ -62,6 +72,8 @@ public abstract class JsDroidScript extends Script {
     IInput input;
 
     private Compiler compiler;
+    //创建这个脚本的那次编译的报告
+    private CompileReport compileReport;
 
     public void setPkg(String pkg) {
         this.pkg = pkg;
@@ -78,12 +90,78 @@ public abstract class JsDroidScript extends Script {
 
     private Handler handler;
 
+    //启动脚本的请求id，日志带上该id
+    private int requestId;
+
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    //运行句柄，用于停止脚本
+    private ScriptRun scriptRun;
+
+    public void setScriptRun(ScriptRun scriptRun) {
+        this.scriptRun = scriptRun;
+    }
+
+    /**
+     * 脚本被停止时抛出ScriptCancelledError
+     */
+    protected void checkCancel() {
+        if (scriptRun != null) {
+            scriptRun.check();
+        }
+    }
+
+    /**
+     * 获取输入权，等待时被停止则抛出ScriptCancelledError
+     */
+    private void acquireInput() {
+        try {
+            InputArbiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptCancelledError();
+        }
+    }
+
+    /**
+     * 相对路径按脚本目录解析
+     *
+     * @param file
+     * @return
+     */
+    public String resolve(String file) {
+        if (dir == null || new File(file).isAbsolute()) {
+            return file;
+        }
+        return new File(dir, file).getPath();
+    }
+
+    /**
+     * 脚本是否被停止，长时间的计算循环可以自行检查
+     *
+     * @return
+     */
+    public boolean isStopped() {
+        return scriptRun != null && scriptRun.isCancelled();
+    }
+
     public String dir;
 
     public void setCompiler(Compiler compiler) {
         this.compiler = compiler;
     }
 
+    void setCompileReport(CompileReport compileReport) {
+        this.compileReport = compileReport;
+    }
+
+    //eval和load的代码使用和当前脚本相同的编译模式
+    private boolean isCompileStatic() {
+        return compileReport != null && "static".equals(compileReport.mode);
+    }
+
     public String version() {
         return VERSION;
     }
@@ -92,23 +170,59 @@ public abstract class JsDroidScript extends Script {
     public void run(File file, String[] arguments) throws CompilationFailedException, IOException {
     }
 
-    private JsDroidScript evaluate(String code, String filename) throws Exception {
-        JsDroidScript script = compiler.evaluate(code, filename, false);
+    /**
+     * 执行字符串，相同的代码只编译一次
+     *
+     * @param code
+     * @return
+     * @throws Exception
+     */
+    public Object eval(String code) throws Exception {
+        JsDroidScript script = compiler.evaluate(code, null, false, isCompileStatic());
         script.setBinding(getBinding());
-        script.run();
-        return script;
+        inherit(script);
+        return script.run();
     }
 
     /**
-     * 执行字符串
+     * 编译报告
+     *
+     * @return
+     */
+    public CompileReport getCompileReport() {
+        return compileReport;
+    }
+
+    /**
+     * 编译警告，例如静态编译失败改为动态编译
      *
-     * @param code
      * @return
+     */
+    public List<String> getCompileWarnings() {
+        return compileReport == null ? new ArrayList<String>() : compileReport.warnings;
+    }
+
+    /**
+     * 测试静态编译和动态编译的循环速度
+     *
+     * @param iterations 循环次数
+     * @return 每毫秒循环次数
      * @throws Exception
      */
-    public Object eval(String code) throws Exception {
-        JsDroidScript object = evaluate(code, null);
-        return object.run();
+    public Map<String, Double> benchmarkLoop(int iterations) throws Exception {
+        return CompilerBenchmark.loopThroughput(compiler, iterations);
+    }
+
+    /**
+     * 测试eval的编译加载耗时
+     *
+     * @param code
+     * @param times
+     * @return 临时jar和内存加载的平均耗时，单位毫秒
+     * @throws Exception
+     */
+    public Map<String, Double> benchmarkEval(String code, int times) throws Exception {
+        return CompilerBenchmark.evalLatency(compiler, code, times);
     }
 
     /**
@@ -119,11 +233,28 @@ public abstract class JsDroidScript extends Script {
      * @throws Exception
      */
     public JsDroidScript load(String file) throws Exception {
+        file = resolve(file);
         String code = FileUtil.read(file);
-        JsDroidScript script = compiler.evaluate(code, file, false);
+        JsDroidScript script = compiler.evaluate(code, file, false, isCompileStatic());
+        inherit(script);
         return script;
     }
 
+    /**
+     * 子脚本使用相同的输出和停止状态
+     *
+     * @param script
+     */
+    private void inherit(JsDroidScript script) {
+        script.handler = handler;
+        script.requestId = requestId;
+        script.scriptRun = scriptRun;
+        script.dir = dir;
+        script.pkg = pkg;
+        script.app = app;
+        script.input = input;
+    }
+
     /**
      * 执行shell命令
      *
@@ -141,6 +272,14 @@ public abstract class JsDroidScript extends Script {
      * @param y
      */
     public void touchDown(int x, int y) {
+        checkCancel();
+        //按下到抬起之间独占输入
+        try {
+            InputArbiter.beginGesture();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptCancelledError();
+        }
         device.getInteractionController().touchDown(x, y);
     }
 
@@ -151,7 +290,15 @@ public abstract class JsDroidScript extends Script {
      * @param y
      */
     public void touchUp(int x, int y) {
-        device.getInteractionController().touchUp(x, y);
+        checkCancel();
+        acquireInput();
+        try {
+            device.getInteractionController().touchUp(x, y);
+        } finally {
+            //释放本次和touchDown获取的输入权
+            InputArbiter.release();
+            InputArbiter.endGesture();
+        }
     }
 
     /**
@@ -161,7 +308,13 @@ public abstract class JsDroidScript extends Script {
      * @param y
      */
     public void touchMove(int x, int y) {
-        device.getInteractionController().touchMove(x, y);
+        checkCancel();
+        acquireInput();
+        try {
+            device.getInteractionController().touchMove(x, y);
+        } finally {
+            InputArbiter.release();
+        }
     }
 
     /**
@@ -175,6 +328,8 @@ public abstract class JsDroidScript extends Script {
      * @return
      */
     public Point findColor(int left, int top, int right, int bottom, String colors) {
+        //循环找色时也能被停止
+        checkCancel();
         return null;
     }
 
@@ -184,13 +339,27 @@ public abstract class JsDroidScript extends Script {
      *
      * @param x
      * @param y
-     * @return
+     * @return 坐标在屏幕外或截图失败返回0，屏幕上的颜色都不透明，不会是0
      */
     public int getColor(int x, int y) {
+        checkCancel();
         if (screen != null) {
+            if (x < 0 || y < 0 || x >= screen.getWidth() || y >= screen.getHeight()) {
+                return 0;
+            }
             return screen.getPixel(x, y);
         }
-        return BitmapUtil.takeScreenshot().getPixel(x, y);
+        //screenRegion会把屏幕外的坐标改成整个屏幕，先检查
+        if (x < 0 || y < 0 || x >= device.getDisplayWidth() || y >= device.getDisplayHeight()) {
+            return 0;
+        }
+        Bitmap bitmap = BitmapUtil.takeScreenshot(x, y, x + 1, y + 1, 1);
+        if (bitmap == null) {
+            return 0;
+        }
+        int color = bitmap.getPixel(0, 0);
+        BitmapPool.release(bitmap);
+        return color;
     }
 
     public int red(int color) {
@@ -211,7 +380,9 @@ public abstract class JsDroidScript extends Script {
      * 锁定屏幕
      */
     public synchronized void lockScreen() {
-        screen = BitmapUtil.takeScreenshot();
+        checkCancel();
+        //多个脚本同时锁定屏幕时共用截图
+        screen = FrameCache.get(SHARED_FRAME_AGE);
     }
 
     /**
@@ -221,6 +392,88 @@ public abstract class JsDroidScript extends Script {
         screen = null;
     }
 
+    private Map<String, FrameHash> frameHashes = new HashMap<>();
+
+    /**
+     * 区域画面是否变化，只比较分块哈希
+     *
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     * @param threshold 差异阈值0-1，超过则认为变化
+     * @return 与上次调用时相比是否变化，首次调用返回true
+     */
+    public boolean screenChanged(int left, int top, int right, int bottom, float threshold) {
+        checkCancel();
+        Rect region = BitmapUtil.screenRegion(left, top, right, bottom);
+        FrameHash hash = FrameHash.capture(region);
+        if (hash == null) {
+            return false;
+        }
+        FrameHash last;
+        synchronized (frameHashes) {
+            last = frameHashes.put(region.toShortString(), hash);
+        }
+        return hash.distance(last) > threshold;
+    }
+
+    /**
+     * 全屏画面是否变化
+     *
+     * @param threshold
+     * @return
+     */
+    public boolean screenChanged(float threshold) {
+        return screenChanged(0, 0, 0, 0, threshold);
+    }
+
+    /**
+     * 等待区域画面稳定
+     *
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     * @param quietMs 画面保持不变的时间，单位毫秒
+     * @param timeout 超时时间，单位毫秒
+     * @return 是否稳定，超时返回false
+     * @throws InterruptedException
+     */
+    public boolean waitForScreenStable(int left, int top, int right, int bottom, long quietMs, long timeout) throws InterruptedException {
+        Rect region = BitmapUtil.screenRegion(left, top, right, bottom);
+        long start = System.currentTimeMillis();
+        long stableSince = start;
+        FrameHash last = FrameHash.capture(region);
+        for (; ; ) {
+            long now = System.currentTimeMillis();
+            if (now - stableSince >= quietMs) {
+                return true;
+            }
+            if (now - start >= timeout) {
+                return false;
+            }
+            delay(Math.min(50, Math.max(1, quietMs / 4)));
+            FrameHash hash = FrameHash.capture(region);
+            if (hash == null || hash.distance(last) > STABLE_THRESHOLD) {
+                stableSince = System.currentTimeMillis();
+            }
+            last = hash;
+        }
+    }
+
+    /**
+     * 等待全屏画面稳定
+     *
+     * @param quietMs
+     * @param timeout
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean waitForScreenStable(long quietMs, long timeout) throws InterruptedException {
+        return waitForScreenStable(0, 0, 0, 0, quietMs, timeout);
+    }
+
     /**
      * 区域找图
      *
@@ -234,21 +487,28 @@ public abstract class JsDroidScript extends Script {
      * @return
      */
     public Point findPic(String pngFile, int left, int top, int right, int bottom, int offset, float sim) {
-        Bitmap screen;
+        checkCancel();
+        Bitmap image = BitmapUtil.read(resolve(pngFile));
         if (this.screen != null) {
-            screen = this.screen;
-        } else {
-            screen = BitmapUtil.takeScreenshot();
-        }
-        if (new File(pngFile).exists()) {
-            return FindPic.findPic(screen, BitmapUtil.read(pngFile),
-                    (int) left, (int) top, (int) right, (int) bottom,
-                    (int) offset, (float) sim);
-        } else {
-            return FindPic.findPic(screen, BitmapUtil.read(new File(dir, pngFile).getPath()),
+            return FindPic.findPic(this.screen, image,
                     (int) left, (int) top, (int) right, (int) bottom,
                     (int) offset, (float) sim);
         }
+        //只截取查找区域
+        Rect region = BitmapUtil.screenRegion(left, top, right, bottom);
+        Bitmap screen = BitmapUtil.takeScreenshot(region, 1);
+        if (screen == null) {
+            //截图失败
+            return new Point(-1, -1);
+        }
+        Point point = FindPic.findPic(screen, image,
+                0, 0, region.width(), region.height(),
+                (int) offset, (float) sim);
+        BitmapPool.release(screen);
+        if (point.x >= 0 && point.y >= 0) {
+            point.offset(region.left, region.top);
+        }
+        return point;
     }
 
     /**
@@ -264,19 +524,9 @@ public abstract class JsDroidScript extends Script {
      * @return
      */
     public FindImg.Rect findImg(String pngFile, int left, int top, int right, int bottom, int offset, float sim) {
+        checkCancel();
         try {
-            Bitmap screen;
-            if (this.screen != null) {
-                screen = this.screen;
-            } else {
-                screen = BitmapUtil.takeScreenshot();
-            }
-            Bitmap image;
-            if (new File(pngFile).exists()) {
-                image = BitmapUtil.read(pngFile);
-            } else {
-                image = BitmapUtil.read(new File(dir, pngFile).getPath());
-            }
+            Bitmap image = BitmapUtil.read(resolve(pngFile));
             if (image == null) {
                 return null;
             }
@@ -286,7 +536,25 @@ public abstract class JsDroidScript extends Script {
                 distance = 2;
                 level = 16;
             }
-            return FindImg.findImg(screen, image, level, left, top, right, bottom, offset, distance, sim);
+            if (this.screen != null) {
+                return FindImg.findImg(this.screen, image, level, left, top, right, bottom, offset, distance, sim);
+            }
+            //只截取查找区域
+            Rect region = BitmapUtil.screenRegion(left, top, right, bottom);
+            Bitmap screen = BitmapUtil.takeScreenshot(region, 1);
+            if (screen == null) {
+                //截图失败，坐标都为-1
+                return new FindImg.Rect();
+            }
+            FindImg.Rect rect = FindImg.findImg(screen, image, level, 0, 0, region.width(), region.height(), offset, distance, sim);
+            BitmapPool.release(screen);
+            if (rect.left >= 0 && rect.top >= 0) {
+                rect.left += region.left;
+                rect.top += region.top;
+                rect.right += region.left;
+                rect.bottom += region.top;
+            }
+            return rect;
         } catch (Throwable e) {
             e.printStackTrace();
         }
@@ -305,20 +573,64 @@ public abstract class JsDroidScript extends Script {
      * @param type    保存的类型：png/jpg
      */
     public void screenshot(String file, int left, int top, int right, int bottom, int quality, String type) {
-        Bitmap bitmap = BitmapUtil.takeScreenshot();
-        Bitmap bitmap1 = Bitmap.createBitmap(bitmap, left, top, right - left, bottom - top);
-        FileOutputStream out = null;
-        try {
-            out = new FileOutputStream(file);
-            bitmap1.compress(type.equals("png") ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, quality, out);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                out.close();
-            } catch (Exception e) {
-            }
+        screenshot(file, left, top, right, bottom, 1, quality, type);
+    }
+
+    /**
+     * 截图
+     *
+     * @param file    保存的文件为准
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     * @param scale   缩放比例，用于缩略图
+     * @param quality
+     * @param type    保存的类型：png/jpg
+     */
+    public void screenshot(String file, int left, int top, int right, int bottom, float scale, int quality, String type) {
+        checkCancel();
+        Bitmap bitmap = BitmapUtil.takeScreenshot(left, top, right, bottom, scale);
+        if (bitmap == null) {
+            return;
         }
+        //压缩和写文件在后台完成
+        ScreenshotWriter.getInstance().write(screenshotOwner(), resolve(file), bitmap,
+                type.equals("png") ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, quality);
+    }
+
+    //同一次运行中加载的脚本共用截图队列
+    private Object screenshotOwner() {
+        return scriptRun != null ? scriptRun : this;
+    }
+
+    /**
+     * 等待本次运行的所有截图写入文件
+     *
+     * @throws InterruptedException
+     */
+    public void flushScreenshots() throws InterruptedException {
+        ScreenshotWriter.getInstance().flush(screenshotOwner(), 0);
+    }
+
+    /**
+     * 等待本次运行的截图写入文件
+     *
+     * @param timeout 超时时间，单位毫秒
+     * @return 是否全部写完
+     * @throws InterruptedException
+     */
+    public boolean flushScreenshots(long timeout) throws InterruptedException {
+        return ScreenshotWriter.getInstance().flush(screenshotOwner(), timeout);
+    }
+
+    /**
+     * 设置截图队列满时的处理方式
+     *
+     * @param policy block：等待；drop_oldest：丢弃最旧的截图
+     */
+    public void setScreenshotPolicy(String policy) {
+        ScreenshotWriter.getInstance().setPolicy(policy);
     }
 
     /**
@@ -404,6 +716,7 @@ public abstract class JsDroidScript extends Script {
      * @return
      */
     public UiObject2 findObject(BySelector by) {
+        checkCancel();
         return device.findObject(by);
     }
 
@@ -415,7 +728,13 @@ public abstract class JsDroidScript extends Script {
      * @throws InterruptedException
      */
     public void delay(long time) throws InterruptedException {
-        Thread.sleep(time);
+        checkCancel();
+        try {
+            Thread.sleep(time);
+        } catch (InterruptedException e) {
+            checkCancel();
+            throw e;
+        }
     }
 
     /**
@@ -435,7 +754,13 @@ public abstract class JsDroidScript extends Script {
      * @param y
      */
     public void tap(int x, int y) {
-        device.click(x, y);
+        checkCancel();
+        acquireInput();
+        try {
+            device.click(x, y);
+        } finally {
+            InputArbiter.release();
+        }
     }
 
     /**
@@ -445,7 +770,13 @@ public abstract class JsDroidScript extends Script {
      * @param y
      */
     public void click(int x, int y) {
-        device.click(x, y);
+        checkCancel();
+        acquireInput();
+        try {
+            device.click(x, y);
+        } finally {
+            InputArbiter.release();
+        }
     }
 
     /**
@@ -458,7 +789,13 @@ public abstract class JsDroidScript extends Script {
      * @param steps
      */
     public void swipe(int x1, int y1, int x2, int y2, int steps) {
-        device.swipe(x1, y1, x2, y2, steps);
+        checkCancel();
+        acquireInput();
+        try {
+            device.swipe(x1, y1, x2, y2, steps);
+        } finally {
+            InputArbiter.release();
+        }
     }
 
     /**
@@ -483,7 +820,13 @@ public abstract class JsDroidScript extends Script {
      * @param steps
      */
     public void drag(int x1, int y1, int x2, int y2, int steps) {
-        device.drag(x1, y1, x2, y2, steps);
+        checkCancel();
+        acquireInput();
+        try {
+            device.drag(x1, y1, x2, y2, steps);
+        } finally {
+            InputArbiter.release();
+        }
     }
 
     /**
@@ -542,7 +885,7 @@ public abstract class JsDroidScript extends Script {
 
     public String read(String file, String charset) {
         try {
-            return FileUtils.readFileToString(new File(file), charset);
+            return FileUtils.readFileToString(new File(resolve(file)), charset);
         } catch (IOException e) {
         }
         return null;
@@ -554,7 +897,7 @@ public abstract class JsDroidScript extends Script {
 
     public void write(String file, String content, String charset) {
         try {
-            FileUtils.writeStringToFile(new File(file), content, charset);
+            FileUtils.writeStringToFile(new File(resolve(file)), content, charset);
         } catch (IOException e) {
         }
     }
@@ -564,12 +907,12 @@ public abstract class JsDroidScript extends Script {
     }
 
     public void append(String file, String content) {
-        FileUtil.append(file, content);
+        FileUtil.append(resolve(file), content);
     }
 
     public void moveFileToDir(String from, String dir) {
-        File fromFile = new File(from);
-        File toFile = new File(dir);
+        File fromFile = new File(resolve(from));
+        File toFile = new File(resolve(dir));
         try {
             FileUtils.copyFileToDirectory(fromFile, toFile);
             fromFile.delete();
@@ -580,15 +923,15 @@ public abstract class JsDroidScript extends Script {
 
     public void moveFileToFile(String from, String to) {
         try {
-            File fromFile = new File(from);
-            FileUtils.copyFile(fromFile, new File(to));
+            File fromFile = new File(resolve(from));
+            FileUtils.copyFile(fromFile, new File(resolve(to)));
         } catch (IOException e) {
         }
     }
 
     public void copyFileToDir(String from, String dir) {
         try {
-            FileUtils.copyFileToDirectory(new File(from), new File(dir));
+            FileUtils.copyFileToDirectory(new File(resolve(from)), new File(resolve(dir)));
         } catch (IOException e) {
         }
 
@@ -596,28 +939,28 @@ public abstract class JsDroidScript extends Script {
 
     public void copyFileToFile(String from, String to) {
         try {
-            FileUtils.copyFile(new File(from), new File(to));
+            FileUtils.copyFile(new File(resolve(from)), new File(resolve(to)));
         } catch (IOException e) {
         }
     }
 
     public void deleteFile(String file) {
-        new File(file).delete();
+        new File(resolve(file)).delete();
     }
 
     public void createFile(String file) {
         try {
-            new File(file).createNewFile();
+            new File(resolve(file)).createNewFile();
         } catch (IOException e) {
         }
     }
 
     public void mkdir(String file) {
-        new File(file).mkdir();
+        new File(resolve(file)).mkdir();
     }
 
     public void mkdirs(String file) {
-        new File(file).mkdirs();
+        new File(resolve(file)).mkdirs();
     }
 
     public String httpGet(String url) {
@@ -699,7 +1042,7 @@ public abstract class JsDroidScript extends Script {
      * @param data
      */
     public void print(Object data) {
-        handler.print(data);
+        handler.print(requestId, data);
     }
 
     /**
@@ -708,7 +1051,13 @@ public abstract class JsDroidScript extends Script {
      * @param pointerGestures
      */
     public void performGestures(PointerGesture... pointerGestures) {
-        device.performGesture(pointerGestures);
+        checkCancel();
+        acquireInput();
+        try {
+            device.performGesture(pointerGestures);
+        } finally {
+            InputArbiter.release();
+        }
     }
 
 }
@@ -1,21 +1,94 @@
 package com.jsdroid.shell.script;
 
+import com.jsdroid.shell.bean.CompileInfo;
+
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 
 public class JsDroidScriptFactory {
     public static JsDroidScript create(ClassLoader classLoader, File scriptDir, File dexDir, String scriptText) throws Exception {
-        dexDir.mkdir();
-        dexDir.setExecutable(true);
-        dexDir.setReadable(true);
-        dexDir.setWritable(true);
-        Compiler compiler = new Compiler(classLoader, scriptDir, dexDir);
+        return create(classLoader, scriptDir, dexDir, scriptText, false);
+    }
 
-        File mainFile = new File(scriptDir, "main.groovy");
+    public static JsDroidScript create(ClassLoader classLoader, File scriptDir, File dexDir, String scriptText, boolean compileStatic) throws Exception {
+        Compiler compiler = CompilerService.get(classLoader, scriptDir, dexDir);
+        File mainFile = new File(scriptDir, ScriptBundle.MAIN);
         if (scriptText == null) {
             scriptText = FileUtils.readFileToString(mainFile, "utf-8");
         }
-        return compiler.evaluate(scriptText, mainFile.getPath(), true);
+        return compiler.evaluate(scriptText, mainFile.getPath(), true, compileStatic);
+    }
+
+    /**
+     * 加载预编译的脚本包，不能使用时编译本地源码
+     *
+     * @param classLoader
+     * @param scriptDir
+     * @param dexDir
+     * @param bundle
+     * @param compileStatic 改为编译本地源码时是否静态编译
+     * @return
+     * @throws Exception
+     */
+    public static JsDroidScript createFromBundle(ClassLoader classLoader, File scriptDir, File dexDir, File bundle, boolean compileStatic) throws Exception {
+        return CompilerService.get(classLoader, scriptDir, dexDir).evaluateBundle(bundle, compileStatic);
+    }
+
+    /**
+     * 把脚本工程编译为脚本包，保存在dexDir下
+     *
+     * @param classLoader
+     * @param scriptDir
+     * @param dexDir
+     * @param compileStatic 静态编译
+     * @return
+     */
+    public static CompileInfo buildBundle(ClassLoader classLoader, File scriptDir, File dexDir, boolean compileStatic) {
+        CompileInfo info = new CompileInfo();
+        info.dir = scriptDir.getPath();
+        long startTime = System.currentTimeMillis();
+        try {
+            Compiler compiler = CompilerService.get(classLoader, scriptDir, dexDir);
+            File bundle = new File(dexDir, ScriptBundle.FILE_NAME);
+            info.report = compiler.buildBundle(bundle, compileStatic);
+            info.warnings = info.report.warnings;
+            info.success = true;
+            info.bundle = bundle.getPath();
+        } catch (Throwable e) {
+            info.error = e.getMessage();
+        }
+        info.compileTime = System.currentTimeMillis() - startTime;
+        return info;
+    }
+
+    /**
+     * 预编译脚本，编译并加载dex，之后运行相同的脚本不再编译
+     *
+     * @param classLoader
+     * @param scriptDir
+     * @param dexDir
+     * @param scriptText    为null时读取main.groovy
+     * @param compileStatic 静态编译
+     * @return
+     */
+    public static CompileInfo compile(ClassLoader classLoader, File scriptDir, File dexDir, String scriptText, boolean compileStatic) {
+        CompileInfo info = new CompileInfo();
+        info.dir = scriptDir.getPath();
+        long startTime = System.currentTimeMillis();
+        try {
+            JsDroidScript script = create(classLoader, scriptDir, dexDir, scriptText, compileStatic);
+            info.success = script != null;
+            if (script != null) {
+                info.report = script.getCompileReport();
+                info.warnings = script.getCompileWarnings();
+            } else {
+                info.error = "no script class";
+            }
+        } catch (Throwable e) {
+            info.error = e.getMessage();
+        }
+        info.compileTime = System.currentTimeMillis() - startTime;
+        return info;
     }
 }
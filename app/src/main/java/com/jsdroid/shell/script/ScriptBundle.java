@@ -0,0 +1,185 @@
+package com.jsdroid.shell.script;
+
+import com.alibaba.fastjson.JSON;
+import com.jsdroid.shell.bean.BundleManifest;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 预编译的脚本包，zip格式：
+ * <p>
+ * classes.dex：所有源文件编译的dex，可以直接用DexClassLoader加载
+ * <p>
+ * manifest.json：BundleManifest，版本、源文件哈希、类名
+ * <p>
+ * res/：脚本目录下的资源文件
+ */
+public class ScriptBundle {
+    public static final String FILE_NAME = "script.bundle";
+    public static final String MAIN = "main.groovy";
+    public static final String DEX = "classes.dex";
+    public static final String MANIFEST = "manifest.json";
+    public static final String RES = "res/";
+
+    /**
+     * 写入脚本包，先写临时文件再改名
+     *
+     * @param bundle
+     * @param dex
+     * @param manifest
+     * @param scriptDir 资源文件所在目录
+     * @throws IOException
+     */
+    public static void write(File bundle, byte[] dex, BundleManifest manifest, File scriptDir) throws IOException {
+        File tmp = new File(bundle.getPath() + ".tmp");
+        ZipOutputStream zip = null;
+        try {
+            zip = new ZipOutputStream(new FileOutputStream(tmp));
+            zip.putNextEntry(new ZipEntry(DEX));
+            zip.write(dex);
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(JSON.toJSONBytes(manifest));
+            zip.closeEntry();
+            for (String resource : manifest.resources) {
+                zip.putNextEntry(new ZipEntry(RES + resource));
+                InputStream in = new FileInputStream(new File(scriptDir, resource));
+                try {
+                    IOUtils.copy(in, zip);
+                } finally {
+                    in.close();
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+        } finally {
+            if (zip != null) {
+                zip.close();
+            }
+        }
+        if (!tmp.renameTo(bundle)) {
+            tmp.delete();
+            throw new IOException("write bundle failed:" + bundle);
+        }
+    }
+
+    public static BundleManifest readManifest(File bundle) throws IOException {
+        ZipFile zip = new ZipFile(bundle);
+        try {
+            ZipEntry entry = zip.getEntry(MANIFEST);
+            if (entry == null) {
+                throw new IOException("no manifest in bundle:" + bundle);
+            }
+            InputStream in = zip.getInputStream(entry);
+            try {
+                return JSON.parseObject(IOUtils.toByteArray(in), BundleManifest.class);
+            } finally {
+                in.close();
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * 释放资源文件到脚本目录，已存在且大小相同的文件不覆盖
+     *
+     * @param bundle
+     * @param scriptDir
+     * @throws IOException
+     */
+    public static void extractResources(File bundle, File scriptDir) throws IOException {
+        String base = scriptDir.getCanonicalPath() + File.separator;
+        ZipFile zip = new ZipFile(bundle);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().startsWith(RES)) {
+                    continue;
+                }
+                File file = new File(scriptDir, entry.getName().substring(RES.length()));
+                //不允许写到脚本目录之外
+                if (!file.getCanonicalPath().startsWith(base)) {
+                    continue;
+                }
+                //本地文件和包内一致时不覆盖
+                if (file.isFile() && file.length() == entry.getSize() && crc(file) == entry.getCrc()) {
+                    continue;
+                }
+                file.getParentFile().mkdirs();
+                InputStream in = zip.getInputStream(entry);
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    in.close();
+                    out.close();
+                }
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * 脚本目录下的资源文件，不包括groovy源码和dex目录
+     *
+     * @param scriptDir
+     * @param dexDir
+     * @return 相对路径
+     */
+    public static List<String> listResources(File scriptDir, File dexDir) {
+        List<String> result = new ArrayList<>();
+        listResources(scriptDir, dexDir, "", result);
+        return result;
+    }
+
+    private static void listResources(File dir, File dexDir, String prefix, List<String> out) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(".")) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                if (!file.getAbsolutePath().equals(dexDir.getAbsolutePath())) {
+                    listResources(file, dexDir, prefix + file.getName() + "/", out);
+                }
+            } else if (!file.getName().endsWith(".groovy")) {
+                out.add(prefix + file.getName());
+            }
+        }
+    }
+}
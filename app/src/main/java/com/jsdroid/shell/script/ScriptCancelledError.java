@@ -0,0 +1,10 @@
+package com.jsdroid.shell.script;
+
+/**
+ * 脚本被停止，继承Error避免被脚本中的catch(Exception)吞掉
+ */
+public class ScriptCancelledError extends Error {
+    public ScriptCancelledError() {
+        super("script cancelled");
+    }
+}
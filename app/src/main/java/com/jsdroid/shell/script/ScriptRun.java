@@ -0,0 +1,77 @@
+package com.jsdroid.shell.script;
+
+import com.jsdroid.shell.bean.RunInfo;
+
+/**
+ * 一次脚本运行的句柄，用于停止脚本
+ */
+public class ScriptRun {
+    private final int id;
+    private final int requestId;
+    private final Thread thread;
+    private final String dir;
+    private final long startTime = System.currentTimeMillis();
+    private volatile boolean cancelled;
+    //脚本线程已结束运行，线程回到线程池后不能再中断
+    private boolean finished;
+
+    ScriptRun(int id, int requestId, Thread thread, String dir) {
+        this.id = id;
+        this.requestId = requestId;
+        this.thread = thread;
+        this.dir = dir;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public String getDir() {
+        return dir;
+    }
+
+    public RunInfo info() {
+        RunInfo info = new RunInfo();
+        info.id = id;
+        info.requestId = requestId;
+        info.dir = dir;
+        info.startTime = startTime;
+        info.cancelled = cancelled;
+        return info;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 请求停止，脚本在下一次调用等待、找图等接口时结束
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (!finished) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * 结束运行并清除线程的中断状态，在脚本线程中调用，和cancel互斥
+     */
+    synchronized void finish() {
+        finished = true;
+        Thread.interrupted();
+    }
+
+    /**
+     * 已停止时抛出ScriptCancelledError
+     */
+    public void check() {
+        if (cancelled) {
+            throw new ScriptCancelledError();
+        }
+    }
+}
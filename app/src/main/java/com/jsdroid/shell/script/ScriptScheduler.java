@@ -0,0 +1,96 @@
+package com.jsdroid.shell.script;
+
+import com.jsdroid.shell.bean.RunInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 正在运行的脚本，多个脚本可以同时运行，
+ * 每个脚本有自己的运行id、类加载器、目录和日志通道，
+ * 输入注入由InputArbiter仲裁，截图通过FrameCache共享
+ */
+public class ScriptScheduler {
+    private static final AtomicInteger nextId = new AtomicInteger();
+    private static final Map<Integer, ScriptRun> runs = new LinkedHashMap<>();
+
+    /**
+     * 在脚本线程中登记一次运行
+     *
+     * @param requestId
+     * @param dir       脚本目录
+     * @return
+     */
+    public static ScriptRun start(int requestId, String dir) {
+        ScriptRun run = new ScriptRun(nextId.incrementAndGet(), requestId, Thread.currentThread(), dir);
+        synchronized (runs) {
+            runs.put(run.getId(), run);
+        }
+        return run;
+    }
+
+    /**
+     * 脚本结束，释放输入权并清除线程的中断状态，在脚本线程中调用
+     *
+     * @param run
+     */
+    public static void finish(ScriptRun run) {
+        synchronized (runs) {
+            runs.remove(run.getId());
+        }
+        InputArbiter.releaseAll();
+        run.finish();
+    }
+
+    /**
+     * 正在运行的脚本
+     *
+     * @return
+     */
+    public static List<RunInfo> list() {
+        List<RunInfo> list = new ArrayList<>();
+        synchronized (runs) {
+            for (ScriptRun run : runs.values()) {
+                list.add(run.info());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 停止脚本
+     *
+     * @param id
+     * @return 脚本不存在返回false
+     */
+    public static boolean stop(int id) {
+        ScriptRun run;
+        synchronized (runs) {
+            run = runs.get(id);
+        }
+        if (run == null) {
+            return false;
+        }
+        run.cancel();
+        return true;
+    }
+
+    /**
+     * 停止所有脚本
+     *
+     * @return 停止的脚本数量
+     */
+    public static int stopAll() {
+        List<ScriptRun> list;
+        synchronized (runs) {
+            list = new ArrayList<>(runs.values());
+        }
+        for (ScriptRun run : list) {
+            run.cancel();
+        }
+        return list.size();
+    }
+}
@@ -1,11 +1,13 @@
 package com.jsdroid.shell.server;
 
 import android.net.LocalServerSocket;
+import android.net.LocalSocket;
 
 import com.jsdroid.shell.Server;
 import com.jsdroid.shell.handler.LocalSocketHandler;
 
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class LocalSocketServer implements Runnable {
     LocalServerSocket serverSocket = null;
@@ -16,7 +18,16 @@ public class LocalSocketServer implements Runnable {
         try {
             serverSocket = new LocalServerSocket("jsdroid.shell");
             for (; ; ) {
-                Server.execute(new LocalSocketHandler(serverSocket.accept()));
+                LocalSocket socket = serverSocket.accept();
+                try {
+                    Server.execute(new LocalSocketHandler(socket));
+                } catch (RejectedExecutionException e) {
+                    //连接过多
+                    try {
+                        socket.close();
+                    } catch (Exception e1) {
+                    }
+                }
             }
         } catch (Exception e) {
         } finally {
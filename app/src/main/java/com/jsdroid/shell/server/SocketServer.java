@@ -1,20 +1,47 @@
 package com.jsdroid.shell.server;
 
-import com.jsdroid.shell.Server;
-import com.jsdroid.shell.handler.SocketHandler;
+import com.jsdroid.shell.handler.ChannelHandler;
 
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 
+/**
+ * 单线程选择器处理所有tcp连接的接入和读取，请求交给工作线程池
+ */
 public class SocketServer implements Runnable {
-    ServerSocket serverSocket = null;
+    private static final int PORT = 9800;
+    ServerSocketChannel serverChannel = null;
+    Selector selector = null;
 
     @Override
     public void run() {
 
         try {
-            serverSocket = new ServerSocket(9800);
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(PORT));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
             for (; ; ) {
-                Server.execute(new SocketHandler(serverSocket.accept()));
+                selector.select();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
             }
         } catch (Exception e) {
         } finally {
@@ -24,9 +51,47 @@ public class SocketServer implements Runnable {
         }
     }
 
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.register(selector, SelectionKey.OP_READ, new ChannelHandler(channel));
+            }
+        } catch (Exception e) {
+            closeChannel(channel);
+        }
+    }
+
+    private void read(SelectionKey key) {
+        ChannelHandler handler = (ChannelHandler) key.attachment();
+        boolean open;
+        try {
+            open = handler.read();
+        } catch (Exception e) {
+            open = false;
+        }
+        if (!open) {
+            key.cancel();
+            handler.onClose();
+        }
+    }
+
+    private void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (Exception e) {
+        }
+    }
+
     public void close() {
         try {
-            serverSocket.close();
+            serverChannel.close();
+        } catch (Exception e) {
+        }
+        try {
+            selector.close();
         } catch (Exception e) {
         }
     }
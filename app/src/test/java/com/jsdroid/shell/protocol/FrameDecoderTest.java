@@ -0,0 +1,164 @@
+package com.jsdroid.shell.protocol;
+
+import com.jsdroid.shell.bean.Event;
+import com.jsdroid.shell.bean.EventType;
+import com.jsdroid.shell.bean.Script;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 帧编码和解码的往返测试
+ */
+public class FrameDecoderTest {
+
+    private static Event event(EventType type, int id, String data) {
+        Event event = new Event();
+        event.type = type;
+        event.id = id;
+        event.data = data;
+        return event;
+    }
+
+    private static byte[] encode(Event... events) throws IOException {
+        FrameEncoder encoder = new FrameEncoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Event event : events) {
+            encoder.encode(event, out);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        byte[] bytes = encode(event(EventType.TYPE_RUN, 1, "{\"dir\":\"/sdcard/a\"}"),
+                event(EventType.TYPE_CAPTURE, -2, ""),
+                event(EventType.TYPE_ERROR, Integer.MAX_VALUE, "中文"));
+        List<Event> events = new ArrayList<>();
+        new FrameDecoder().decode(bytes, 0, bytes.length, events);
+        assertEquals(3, events.size());
+        assertEquals(EventType.TYPE_RUN, events.get(0).type);
+        assertEquals(1, events.get(0).id);
+        assertEquals("{\"dir\":\"/sdcard/a\"}", events.get(0).dataString());
+        assertEquals(EventType.TYPE_CAPTURE, events.get(1).type);
+        assertEquals(-2, events.get(1).id);
+        assertEquals(0, events.get(1).payload.length);
+        assertEquals(EventType.TYPE_ERROR, events.get(2).type);
+        assertEquals(Integer.MAX_VALUE, events.get(2).id);
+        assertEquals("中文", events.get(2).dataString());
+    }
+
+    @Test
+    public void decodeByteByByte() throws Exception {
+        byte[] bytes = encode(event(EventType.TYPE_LOG, 7, "hello"), event(EventType.TYPE_EXIT, 8, null));
+        FrameDecoder decoder = new FrameDecoder();
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i++) {
+            decoder.decode(bytes, i, 1, events);
+        }
+        assertEquals(2, events.size());
+        assertEquals("hello", events.get(0).dataString());
+        assertEquals(EventType.TYPE_EXIT, events.get(1).type);
+        assertEquals(8, events.get(1).id);
+    }
+
+    @Test
+    public void headerUsesTypeCode() throws Exception {
+        byte[] bytes = encode(event(EventType.TYPE_BUILD_BUNDLE, 1, ""));
+        assertEquals(EventType.TYPE_BUILD_BUNDLE.code(), bytes[0] & 0xff);
+    }
+
+    @Test
+    public void typeCodes() {
+        //已发布的类型值不能改变
+        assertEquals(0, EventType.TYPE_RUN.code());
+        assertEquals(3, EventType.TYPE_CAPTURE.code());
+        assertEquals(9, EventType.TYPE_OPTION.code());
+        assertEquals(18, EventType.TYPE_ERROR.code());
+        for (EventType type : EventType.values()) {
+            assertSame(type, EventType.fromCode(type.code()));
+        }
+        assertNull(EventType.fromCode(255));
+        assertNull(EventType.fromCode(-1));
+    }
+
+    @Test
+    public void skipUnknownType() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] header = new byte[Protocol.HEADER_SIZE];
+        header[0] = (byte) 200;
+        Protocol.writeInt(header, 2, 5);
+        Protocol.writeInt(header, 6, 3);
+        out.write(header);
+        out.write(new byte[]{1, 2, 3});
+        out.write(encode(event(EventType.TYPE_TOAST, 6, "ok")));
+        byte[] bytes = out.toByteArray();
+        List<Event> events = new ArrayList<>();
+        new FrameDecoder().decode(bytes, 0, bytes.length, events);
+        assertEquals(1, events.size());
+        assertEquals(EventType.TYPE_TOAST, events.get(0).type);
+        assertEquals("ok", events.get(0).dataString());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectLargeRequest() throws Exception {
+        byte[] header = new byte[Protocol.HEADER_SIZE];
+        header[0] = (byte) EventType.TYPE_OPTION.code();
+        Protocol.writeInt(header, 6, Protocol.MAX_REQUEST + 1);
+        new FrameDecoder().decode(header, 0, header.length, new ArrayList<Event>());
+    }
+
+    @Test
+    public void acceptLargeScript() throws Exception {
+        byte[] header = new byte[Protocol.HEADER_SIZE];
+        header[0] = (byte) EventType.TYPE_RUN.code();
+        Protocol.writeInt(header, 6, Protocol.MAX_REQUEST + 1);
+        List<Event> events = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.decode(header, 0, header.length, events);
+        byte[] data = new byte[Protocol.MAX_REQUEST + 1];
+        decoder.decode(data, 0, data.length, events);
+        assertEquals(1, events.size());
+        assertEquals(data.length, events.get(0).payload.length);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectNegativeLength() throws Exception {
+        byte[] header = new byte[Protocol.HEADER_SIZE];
+        header[0] = (byte) EventType.TYPE_RUN.code();
+        Protocol.writeInt(header, 6, -1);
+        new FrameDecoder().decode(header, 0, header.length, new ArrayList<Event>());
+    }
+
+    @Test
+    public void rawScriptText() throws Exception {
+        String text = "def a = \"x\\n\"\nprint a";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("{\"dir\":\"/sdcard/a\",\"compileStatic\":true}".getBytes("utf-8"));
+        out.write(0);
+        out.write(text.getBytes("utf-8"));
+        Event event = new Event();
+        event.type = EventType.TYPE_RUN;
+        event.payload = out.toByteArray();
+        Script script = event.parseScript();
+        assertEquals("/sdcard/a", script.dir);
+        assertTrue(script.compileStatic);
+        assertEquals(text, script.text);
+    }
+
+    @Test
+    public void jsonScript() throws Exception {
+        Event event = new Event();
+        event.type = EventType.TYPE_RUN;
+        event.payload = "{\"dir\":\"/sdcard/a\",\"text\":\"print 1\"}".getBytes("utf-8");
+        Script script = event.parseScript();
+        assertEquals("/sdcard/a", script.dir);
+        assertEquals("print 1", script.text);
+    }
+}
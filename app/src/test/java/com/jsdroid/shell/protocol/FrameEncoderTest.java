@@ -0,0 +1,115 @@
+package com.jsdroid.shell.protocol;
+
+import com.jsdroid.shell.bean.Event;
+import com.jsdroid.shell.bean.EventType;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * 压缩帧和截图中单独压缩的部分共用一个deflate流
+ */
+public class FrameEncoderTest {
+
+    private static byte[] text(int size, char c) {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < size) {
+            builder.append("{\"node\":\"").append(c).append(builder.length()).append("\"},");
+        }
+        return builder.toString().getBytes();
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] data, int size) throws Exception {
+        inflater.setInput(data);
+        byte[] out = new byte[size];
+        int n = 0;
+        while (n < size) {
+            int len = inflater.inflate(out, n, size - n);
+            if (len == 0) {
+                break;
+            }
+            n += len;
+        }
+        assertEquals(size, n);
+        return out;
+    }
+
+    @Test
+    public void noDeflateByDefault() throws Exception {
+        FrameEncoder encoder = new FrameEncoder();
+        byte[] data = text(4096, 'a');
+        assertFalse(encoder.isDeflate());
+        assertNull(encoder.deflatePart(data, 0, data.length));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(Protocol.HEADER_SIZE + data.length, encoder.writeFrame(out, EventType.TYPE_LOG, 1, data, 0, data.length));
+        assertEquals(0, out.toByteArray()[1]);
+    }
+
+    @Test
+    public void frameAndPartsShareStream() throws Exception {
+        FrameEncoder encoder = new FrameEncoder();
+        encoder.setDeflate(1024);
+        byte[] frame = text(8192, 'a');
+        byte[] small = "small".getBytes();
+        byte[] info = text(2048, 'b');
+        byte[] hierarchy = text(16384, 'c');
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeFrame(out, EventType.TYPE_LOG, 1, frame, 0, frame.length);
+        byte[] bytes = out.toByteArray();
+        assertEquals(Protocol.FLAG_DEFLATE, bytes[1]);
+        int length = Protocol.readInt(bytes, 6);
+        assertEquals(bytes.length - Protocol.HEADER_SIZE, length);
+        assertTrue(length < frame.length);
+        byte[] compressedFrame = Arrays.copyOfRange(bytes, Protocol.HEADER_SIZE, bytes.length);
+
+        //小于阈值的帧和部分不压缩
+        out.reset();
+        encoder.writeFrame(out, EventType.TYPE_LOG, 2, small, 0, small.length);
+        assertEquals(0, out.toByteArray()[1]);
+        assertNull(encoder.deflatePart(small, 0, small.length));
+
+        byte[] compressedInfo = encoder.deflatePart(info, 0, info.length);
+        byte[] compressedHierarchy = encoder.deflatePart(hierarchy, 0, hierarchy.length);
+        assertNotNull(compressedInfo);
+        assertNotNull(compressedHierarchy);
+        assertTrue(compressedHierarchy.length < hierarchy.length);
+
+        //客户端按出现顺序用同一个Inflater解压
+        Inflater inflater = new Inflater();
+        assertArrayEquals(frame, inflate(inflater, compressedFrame, frame.length));
+        assertArrayEquals(info, inflate(inflater, compressedInfo, info.length));
+        assertArrayEquals(hierarchy, inflate(inflater, compressedHierarchy, hierarchy.length));
+        inflater.end();
+        encoder.close();
+    }
+
+    @Test
+    public void decodeDeflatedFrameHeader() throws Exception {
+        FrameEncoder encoder = new FrameEncoder();
+        encoder.setDeflate(0);
+        Event event = new Event();
+        event.type = EventType.TYPE_CAPTURE;
+        event.id = 3;
+        event.payload = text(4096, 'd');
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(event, out);
+        byte[] bytes = out.toByteArray();
+        List<Event> events = new ArrayList<>();
+        new FrameDecoder().decode(bytes, 0, bytes.length, events);
+        assertEquals(1, events.size());
+        assertEquals(EventType.TYPE_CAPTURE, events.get(0).type);
+        assertEquals(3, events.get(0).id);
+        Inflater inflater = new Inflater();
+        assertArrayEquals(event.payload, inflate(inflater, events.get(0).payload, event.payload.length));
+        inflater.end();
+        encoder.close();
+    }
+}
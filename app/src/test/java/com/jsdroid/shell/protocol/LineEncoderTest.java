@@ -0,0 +1,95 @@
+package com.jsdroid.shell.protocol;
+
+import com.alibaba.fastjson.JSON;
+import com.jsdroid.shell.bean.Event;
+import com.jsdroid.shell.bean.EventType;
+import com.jsdroid.shell.bean.Script;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 行模式编码和JSON.toJSONString(event)的输出一致，jsonData的对象直接序列化
+ */
+public class LineEncoderTest {
+
+    private static Script script() {
+        Script script = new Script();
+        script.dir = "/sdcard/a";
+        script.text = "print \"中文\"\n";
+        return script;
+    }
+
+    private static String encode(LineEncoder encoder, Event event) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(event, out);
+        return out.toString("utf-8");
+    }
+
+    @Test
+    public void sameAsToJSONString() throws Exception {
+        Event event = new Event();
+        event.type = EventType.TYPE_LOG;
+        event.id = 3;
+        event.data = "a\"b\n";
+        assertEquals(JSON.toJSONString(event) + "\n", encode(new LineEncoder(), event));
+    }
+
+    @Test
+    public void dataObjectAsString() throws Exception {
+        Event event = new Event();
+        event.type = EventType.TYPE_COMPILE;
+        event.id = 4;
+        event.jsonData(script());
+        Event expected = new Event();
+        expected.type = EventType.TYPE_COMPILE;
+        expected.id = 4;
+        expected.data = JSON.toJSONString(script());
+        assertEquals(JSON.toJSONString(expected) + "\n", encode(new LineEncoder(), event));
+    }
+
+    @Test
+    public void dataObjectRaw() throws Exception {
+        LineEncoder encoder = new LineEncoder();
+        encoder.setRawData(true);
+        Event event = new Event();
+        event.type = EventType.TYPE_COMPILE;
+        event.id = 5;
+        event.jsonData(script());
+        String line = encode(encoder, event);
+        assertEquals("{\"data\":" + JSON.toJSONString(script()) + ",\"id\":5,\"type\":\"TYPE_COMPILE\"}\n", line);
+        Script script = JSON.parseObject(line).getObject("data", Script.class);
+        assertEquals("/sdcard/a", script.dir);
+        assertEquals(script().text, script.text);
+    }
+
+    @Test
+    public void nullDataObject() throws Exception {
+        LineEncoder encoder = new LineEncoder();
+        encoder.setRawData(true);
+        Event event = new Event();
+        event.type = EventType.TYPE_COMPILE_REPORT;
+        event.jsonData(null);
+        assertEquals("{\"data\":null,\"id\":0,\"type\":\"TYPE_COMPILE_REPORT\"}\n", encode(encoder, event));
+        assertEquals("null", event.dataString());
+    }
+
+    @Test
+    public void dataObjectInFrame() throws Exception {
+        Event event = new Event();
+        event.type = EventType.TYPE_COMPILE;
+        event.id = 6;
+        event.jsonData(script());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FrameEncoder().encode(event, out);
+        byte[] bytes = out.toByteArray();
+        List<Event> events = new ArrayList<>();
+        new FrameDecoder().decode(bytes, 0, bytes.length, events);
+        assertEquals(JSON.toJSONString(script()), events.get(0).dataString());
+    }
+}
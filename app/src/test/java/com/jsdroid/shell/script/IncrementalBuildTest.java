@@ -0,0 +1,165 @@
+package com.jsdroid.shell.script;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 增量编译需要重新编译的文件和类引用分析
+ */
+public class IncrementalBuildTest {
+    private File dexDir;
+
+    @Before
+    public void setUp() throws Exception {
+        dexDir = File.createTempFile("dex", "");
+        dexDir.delete();
+        dexDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dexDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dexDir.delete();
+    }
+
+    private IncrementalBuild.SourceEntry entry(String hash, String cls, String... deps) throws Exception {
+        IncrementalBuild.SourceEntry entry = new IncrementalBuild.SourceEntry();
+        entry.hash = hash;
+        entry.jar = cls + ".jar";
+        entry.classes.add(cls);
+        entry.deps.addAll(Arrays.asList(deps));
+        new File(dexDir, entry.jar).createNewFile();
+        return entry;
+    }
+
+    /**
+     * a <- b <- c，d独立
+     */
+    private IncrementalBuild build() throws Exception {
+        IncrementalBuild build = new IncrementalBuild(dexDir, "static");
+        build.put("a.groovy", entry("1", "A"));
+        build.put("b.groovy", entry("2", "B", "A"));
+        build.put("c.groovy", entry("3", "C", "B"));
+        build.put("d.groovy", entry("4", "D"));
+        return build;
+    }
+
+    private static Map<String, String> hashes(String... pairs) {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            hashes.put(pairs[i], pairs[i + 1]);
+        }
+        return hashes;
+    }
+
+    @Test
+    public void nothingChanged() throws Exception {
+        assertTrue(build().dirty(hashes("a.groovy", "1", "b.groovy", "2", "c.groovy", "3", "d.groovy", "4")).isEmpty());
+    }
+
+    @Test
+    public void changeIsTransitive() throws Exception {
+        Set<String> dirty = build().dirty(hashes("a.groovy", "x", "b.groovy", "2", "c.groovy", "3", "d.groovy", "4"));
+        assertEquals(new HashSet<>(Arrays.asList("a.groovy", "b.groovy", "c.groovy")), dirty);
+    }
+
+    @Test
+    public void changeLeaf() throws Exception {
+        Set<String> dirty = build().dirty(hashes("a.groovy", "1", "b.groovy", "2", "c.groovy", "x", "d.groovy", "4"));
+        assertEquals(new HashSet<>(Arrays.asList("c.groovy")), dirty);
+    }
+
+    @Test
+    public void deletedFileDirtiesDependents() throws Exception {
+        Set<String> dirty = build().dirty(hashes("b.groovy", "2", "c.groovy", "3", "d.groovy", "4"));
+        assertEquals(new HashSet<>(Arrays.asList("b.groovy", "c.groovy")), dirty);
+    }
+
+    @Test
+    public void newFile() throws Exception {
+        Set<String> dirty = build().dirty(hashes("a.groovy", "1", "b.groovy", "2", "c.groovy", "3", "d.groovy", "4", "e.groovy", "5"));
+        assertEquals(new HashSet<>(Arrays.asList("e.groovy")), dirty);
+    }
+
+    @Test
+    public void missingJar() throws Exception {
+        IncrementalBuild build = build();
+        new File(dexDir, "D.jar").delete();
+        Set<String> dirty = build.dirty(hashes("a.groovy", "1", "b.groovy", "2", "c.groovy", "3", "d.groovy", "4"));
+        assertEquals(new HashSet<>(Arrays.asList("d.groovy")), dirty);
+    }
+
+    @Test
+    public void retainDeletesJar() throws Exception {
+        IncrementalBuild build = build();
+        build.retain(Arrays.asList("a.groovy", "b.groovy", "c.groovy"));
+        assertNull(build.get("d.groovy"));
+        assertFalse(new File(dexDir, "D.jar").exists());
+        assertEquals(new HashSet<>(Arrays.asList("A", "B", "C")), build.allClasses());
+    }
+
+    @Test
+    public void stateSavedPerOptions() throws Exception {
+        build().save();
+        IncrementalBuild loaded = new IncrementalBuild(dexDir, "static");
+        assertEquals("2", loaded.get("b.groovy").hash);
+        assertEquals(Arrays.asList("A"), loaded.get("b.groovy").deps);
+        //其它编译模式的状态单独保存
+        assertNull(new IncrementalBuild(dexDir, "dynamic").get("b.groovy"));
+    }
+
+    @Test
+    public void relativePath() {
+        File dir = new File("/sdcard/script");
+        assertEquals("lib" + File.separator + "a.groovy",
+                IncrementalBuild.relative(dir, new File(dir, "lib/a.groovy").getPath()));
+    }
+
+    static class Target {
+    }
+
+    static class Holder {
+        Target target;
+
+        void set(Target target) {
+            this.target = target;
+        }
+    }
+
+    private static byte[] classBytes(Class<?> c) throws Exception {
+        InputStream in = c.getResourceAsStream(c.getName().substring(c.getName().lastIndexOf('.') + 1) + ".class");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void findReferences() throws Exception {
+        Set<String> classes = new HashSet<>(Arrays.asList(Target.class.getName(), "com.jsdroid.Missing"));
+        Set<String> out = new HashSet<>();
+        IncrementalBuild.findReferences(classBytes(Holder.class), classes, out);
+        assertEquals(new HashSet<>(Arrays.asList(Target.class.getName())), out);
+    }
+}
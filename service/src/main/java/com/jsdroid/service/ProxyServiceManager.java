@@ -1,6 +1,7 @@
 package com.jsdroid.service;
 
 import java.lang.reflect.Proxy;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ProxyServiceManager {
 
@@ -12,7 +13,19 @@ public class ProxyServiceManager {
                 proxyFactory);
     }
 
-    public static void addService(String name, Object service) {
-        ServerThreadPool.execute(new ProxyServer(name,service));
+    /**
+     * 启动服务
+     *
+     * @param name
+     * @param service
+     * @return 服务数量已达上限时返回false
+     */
+    public static boolean addService(String name, Object service) {
+        try {
+            ServerThreadPool.execute(new ProxyServer(name,service));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
     }
 }
@@ -1,10 +1,58 @@
 package com.jsdroid.service;
 
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ServerThreadPool {
-    private static ExecutorService threadPool;
+    //每个服务占用一个线程
+    private static final int MAX_SERVICES = 16;
+    private static ThreadPoolExecutor threadPool;
+    private static final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 服务线程池，用于统计
+     *
+     * @return
+     */
+    public synchronized static ThreadPoolExecutor getThreadPool() {
+        if (threadPool == null) {
+            threadPool = new ThreadPoolExecutor(0, MAX_SERVICES, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "proxy-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            final RejectedExecutionHandler abort = new ThreadPoolExecutor.AbortPolicy();
+            threadPool.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    rejectedCount.incrementAndGet();
+                    abort.rejectedExecution(r, executor);
+                }
+            });
+        }
+        return threadPool;
+    }
+
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @param runnable
+     * @throws java.util.concurrent.RejectedExecutionException 服务数量已达上限
+     */
     public static void execute(Runnable runnable) {
-        threadPool.execute(runnable);
+        getThreadPool().execute(runnable);
     }
 }
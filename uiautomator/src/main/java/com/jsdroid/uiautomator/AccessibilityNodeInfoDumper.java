@@ -46,6 +46,19 @@ class AccessibilityNodeInfoDumper {
 
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
     public static void dumpWindowHierarchy(UiDevice device, OutputStream out) throws IOException {
+        dumpWindowHierarchy(device, out, null);
+    }
+
+    /**
+     * 一次遍历同时输出xml和节点列表
+     *
+     * @param device
+     * @param out
+     * @param nodes  不为null时，填充每个窗口的根节点
+     * @throws IOException
+     */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    public static void dumpWindowHierarchy(UiDevice device, OutputStream out, List<Node> nodes) throws IOException {
         XmlSerializer serializer = Xml.newSerializer();
         serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
         serializer.setOutput(out, "UTF-8");
@@ -54,8 +67,15 @@ class AccessibilityNodeInfoDumper {
         serializer.startTag("", "hierarchy"); // TODO(allenhair): Should we use a namespace?
         serializer.attribute("", "rotation", Integer.toString(device.getDisplayRotation()));
 
+        int width = device.getDisplayWidth();
+        int height = device.getDisplayHeight();
         for (AccessibilityNodeInfo root : device.getWindowRoots()) {
-            dumpNodeRec(root, serializer, 0, device.getDisplayWidth(), device.getDisplayHeight());
+            Node node = null;
+            if (nodes != null) {
+                node = new Node();
+                nodes.add(node);
+            }
+            dumpNodeRec(root, serializer, node, 0, width, height);
         }
 
         serializer.endTag("", "hierarchy");
@@ -63,8 +83,11 @@ class AccessibilityNodeInfoDumper {
     }
 
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
-    private static void dumpNodeRec(AccessibilityNodeInfo node, XmlSerializer serializer, int index,
-                                    int width, int height) throws IOException {
+    private static void dumpNodeRec(AccessibilityNodeInfo node, XmlSerializer serializer, Node out,
+                                    int index, int width, int height) throws IOException {
+        if (out != null) {
+            fillNode(node, out, index, width, height);
+        }
         serializer.startTag("", "node");
         if (!nafExcludedClass(node) && !nafCheck(node))
             serializer.attribute("", "NAF", Boolean.toString(true));
@@ -91,7 +114,12 @@ class AccessibilityNodeInfoDumper {
             AccessibilityNodeInfo child = node.getChild(i);
             if (child != null) {
                 if (child.isVisibleToUser()) {
-                    dumpNodeRec(child, serializer, i, width, height);
+                    Node childNode = null;
+                    if (out != null) {
+                        childNode = new Node();
+                        out.children.add(childNode);
+                    }
+                    dumpNodeRec(child, serializer, childNode, i, width, height);
                     child.recycle();
                 } else {
                     Log.i(LOGTAG, String.format("Skipping invisible child: %s", child.toString()));
@@ -228,6 +256,27 @@ class AccessibilityNodeInfoDumper {
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
     public static void dumpNode(AccessibilityNodeInfo info, Node root,
                                 int index, int width, int height) {
+        fillNode(info, root, index, width, height);
+        int count = info.getChildCount();
+        for (int i = 0; i < count; i++) {
+            AccessibilityNodeInfo child = info.getChild(i);
+            if (child != null) {
+                if (child.isVisibleToUser()) {
+                    Node childNode = new Node();
+                    dumpNode(child, childNode, i, width, height);
+                    root.children.add(childNode);
+                    child.recycle();
+                }
+            }
+        }
+    }
+
+    /**
+     * 填充节点属性，不包含子节点
+     */
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void fillNode(AccessibilityNodeInfo info, Node root,
+                                 int index, int width, int height) {
         root.sourceId = info.getSourceNodeId();
         root.index = index;
         root.text = safeCharSeqToString(info.getText());
@@ -249,17 +298,5 @@ class AccessibilityNodeInfoDumper {
                 .getVisibleBoundsInScreen(info, width, height);
         root.rect = new Rect(r.left, r.top, r.right, r.bottom);
         root.children = new ArrayList<Node>();
-        int count = info.getChildCount();
-        for (int i = 0; i < count; i++) {
-            AccessibilityNodeInfo child = info.getChild(i);
-            if (child != null) {
-                if (child.isVisibleToUser()) {
-                    Node childNode = new Node();
-                    dumpNode(child, childNode, i, width, height);
-                    root.children.add(childNode);
-                    child.recycle();
-                }
-            }
-        }
     }
 }
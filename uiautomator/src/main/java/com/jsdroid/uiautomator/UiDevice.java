@@ -963,6 +963,18 @@ public class UiDevice implements Searchable {
         AccessibilityNodeInfoDumper.dumpWindowHierarchy(this, out);
     }
 
+    /**
+     * Dump the current window hierarchy to an {@link OutputStream} and collect the
+     * same nodes into {@code nodes} within a single traversal.
+     *
+     * @param out   The output stream that the window hierarchy information is written to.
+     * @param nodes The list that receives one root {@link com.jsdroid.node.Node} per window.
+     * @throws IOException
+     */
+    public void dumpWindowHierarchy(OutputStream out, List<com.jsdroid.node.Node> nodes) throws IOException {
+        AccessibilityNodeInfoDumper.dumpWindowHierarchy(this, out, nodes);
+    }
+
     /**
      * Waits for a window content update event to occur.
      * <p>
@@ -0,0 +1,75 @@
+package com.jsdroid.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * 位图复用池，避免区域截图反复分配内存
+ */
+public class BitmapPool {
+    private static final int MAX_SIZE = 4;
+    private static final LinkedList<Bitmap> pool = new LinkedList<>();
+
+    /**
+     * 获取指定尺寸的位图，复用的位图已清空为透明，未绘制的部分不会留下上次的内容
+     *
+     * @param width
+     * @param height
+     * @param config
+     * @return
+     */
+    public static Bitmap acquire(int width, int height, Bitmap.Config config) {
+        synchronized (pool) {
+            Iterator<Bitmap> iterator = pool.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == config) {
+                    iterator.remove();
+                    bitmap.eraseColor(0);
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * 归还位图，池满时回收最旧的位图
+     *
+     * @param bitmap
+     */
+    public static void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable()) {
+            bitmap.recycle();
+            return;
+        }
+        Bitmap eldest = null;
+        synchronized (pool) {
+            if (pool.contains(bitmap)) {
+                return;
+            }
+            pool.addFirst(bitmap);
+            if (pool.size() > MAX_SIZE) {
+                eldest = pool.removeLast();
+            }
+        }
+        if (eldest != null) {
+            eldest.recycle();
+        }
+    }
+
+    public static void clear() {
+        synchronized (pool) {
+            for (Bitmap bitmap : pool) {
+                bitmap.recycle();
+            }
+            pool.clear();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 
 import android.annotation.SuppressLint;
 import android.app.IUiAutomationConnection;
@@ -13,6 +14,7 @@ import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.os.Build;
 import android.support.annotation.RequiresApi;
 import android.view.Surface;
@@ -118,6 +120,108 @@ public class BitmapUtil {
         return screenShot;
     }
 
+    /**
+     * 将区域限制在屏幕内，right或bottom不大于left或top时取整个屏幕宽高
+     *
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     * @return
+     */
+    public static Rect screenRegion(int left, int top, int right, int bottom) {
+        int screenWidth = UiDevice.getInstance().getDisplayWidth();
+        int screenHeight = UiDevice.getInstance().getDisplayHeight();
+        if (left < 0 || left >= screenWidth) {
+            left = 0;
+        }
+        if (top < 0 || top >= screenHeight) {
+            top = 0;
+        }
+        if (right <= left || right > screenWidth) {
+            right = screenWidth;
+        }
+        if (bottom <= top || bottom > screenHeight) {
+            bottom = screenHeight;
+        }
+        return new Rect(left, top, right, bottom);
+    }
+
+    /**
+     * 区域截图，只生成区域缩放后的图片，返回的位图可以通过BitmapPool.release归还
+     *
+     * @param region 屏幕坐标，见screenRegion
+     * @param scale  缩放比例
+     * @return
+     */
+    public static Bitmap takeScreenshot(Rect region, float scale) {
+        UiDevice device = UiDevice.getInstance();
+        int rotation = device.getRotation();
+        int screenWidth = device.getDisplayWidth();
+        int screenHeight = device.getDisplayHeight();
+        if (scale <= 0) {
+            scale = 1;
+        }
+        int width = Math.max(1, (int) (region.width() * scale + 0.5f));
+        int height = Math.max(1, (int) (region.height() * scale + 0.5f));
+        if (rotation == UiAutomation.ROTATION_FREEZE_0) {
+            // 由SurfaceFlinger直接裁剪缩放
+            Bitmap screenShot = screenshotCrop(region, width, height);
+            if (screenShot != null) {
+                screenShot.setHasAlpha(false);
+                return screenShot;
+            }
+        }
+        // 在源头缩放整个屏幕，再裁剪到复用的位图中
+        int fullWidth = Math.max(1, (int) (screenWidth * scale + 0.5f));
+        int fullHeight = Math.max(1, (int) (screenHeight * scale + 0.5f));
+        Bitmap full = takeScreenshot(rotation, fullWidth, fullHeight);
+        if (full == null) {
+            return null;
+        }
+        if (width == full.getWidth() && height == full.getHeight()) {
+            return full;
+        }
+        Rect src = new Rect((int) (region.left * scale + 0.5f), (int) (region.top * scale + 0.5f),
+                0, 0);
+        src.right = Math.min(full.getWidth(), src.left + width);
+        src.bottom = Math.min(full.getHeight(), src.top + height);
+        Bitmap result = BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(result);
+        canvas.drawBitmap(full, src, new Rect(0, 0, src.width(), src.height()), null);
+        canvas.setBitmap(null);
+        full.recycle();
+        result.setHasAlpha(false);
+        return result;
+    }
+
+    public static Bitmap takeScreenshot(int left, int top, int right, int bottom, float scale) {
+        return takeScreenshot(screenRegion(left, top, right, bottom), scale);
+    }
+
+    private static Method screenshotCropMethod;
+    private static boolean screenshotCropResolved;
+
+    /**
+     * SurfaceControl.screenshot(Rect, int, int, int, int, boolean, int)，仅部分系统版本存在
+     */
+    private static Bitmap screenshotCrop(Rect crop, int width, int height) {
+        try {
+            if (!screenshotCropResolved) {
+                screenshotCropResolved = true;
+                screenshotCropMethod = SurfaceControl.class.getMethod("screenshot", Rect.class,
+                        int.class, int.class, int.class, int.class, boolean.class, int.class);
+            }
+            if (screenshotCropMethod == null) {
+                return null;
+            }
+            return (Bitmap) screenshotCropMethod.invoke(null, crop, width, height,
+                    0, Integer.MAX_VALUE, false, Surface.ROTATION_0);
+        } catch (Throwable e) {
+        }
+        return null;
+    }
+
     public static PicUtil.Pic bitmap2Pic(Bitmap bmp) {
         PicUtil.Pic pic = new PicUtil.Pic();
         pic.width = bmp.getWidth();
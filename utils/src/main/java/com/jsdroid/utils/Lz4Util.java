@@ -0,0 +1,155 @@
+package com.jsdroid.utils;
+
+import java.util.Arrays;
+
+/**
+ * LZ4块格式压缩，用于原始像素数据的快速压缩
+ */
+public class Lz4Util {
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 12;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    public static byte[] compress(byte[] src) {
+        return compress(src, 0, src.length);
+    }
+
+    /**
+     * 压缩为LZ4块格式（不含帧头），解压时需要原始长度
+     *
+     * @param src
+     * @param srcOff
+     * @param srcLen
+     * @return
+     */
+    public static byte[] compress(byte[] src, int srcOff, int srcLen) {
+        byte[] dst = new byte[maxCompressedLength(srcLen)];
+        int dp = 0;
+        int end = srcOff + srcLen;
+        int anchor = srcOff;
+        if (srcLen >= MF_LIMIT) {
+            int[] table = new int[1 << HASH_LOG];
+            Arrays.fill(table, -1);
+            int matchLimit = end - LAST_LITERALS;
+            int mfLimit = end - MF_LIMIT;
+            int ip = srcOff;
+            while (ip < mfLimit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                int ref = table[h];
+                table[h] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+                    ip++;
+                    continue;
+                }
+                //向前扩展匹配
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int literalLength = ip - anchor;
+                int mIp = ip + MIN_MATCH;
+                int mRef = ref + MIN_MATCH;
+                while (mIp < matchLimit && src[mIp] == src[mRef]) {
+                    mIp++;
+                    mRef++;
+                }
+                int matchLength = mIp - ip - MIN_MATCH;
+                int tokenPos = dp++;
+                dst[tokenPos] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(matchLength, 15));
+                if (literalLength >= 15) {
+                    dp = writeLength(dst, dp, literalLength - 15);
+                }
+                System.arraycopy(src, anchor, dst, dp, literalLength);
+                dp += literalLength;
+                int distance = ip - ref;
+                dst[dp++] = (byte) (distance & 0xff);
+                dst[dp++] = (byte) (distance >> 8 & 0xff);
+                if (matchLength >= 15) {
+                    dp = writeLength(dst, dp, matchLength - 15);
+                }
+                ip = mIp;
+                anchor = ip;
+            }
+        }
+        //剩余的字面量
+        int literalLength = end - anchor;
+        dst[dp++] = (byte) (Math.min(literalLength, 15) << 4);
+        if (literalLength >= 15) {
+            dp = writeLength(dst, dp, literalLength - 15);
+        }
+        System.arraycopy(src, anchor, dst, dp, literalLength);
+        dp += literalLength;
+        return Arrays.copyOf(dst, dp);
+    }
+
+    /**
+     * 解压LZ4块
+     *
+     * @param src
+     * @param rawLength 原始长度
+     * @return
+     */
+    public static byte[] decompress(byte[] src, int rawLength) {
+        byte[] dst = new byte[rawLength];
+        int sp = 0;
+        int dp = 0;
+        while (sp < src.length) {
+            int token = src[sp++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    b = src[sp++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, sp, dst, dp, literalLength);
+            sp += literalLength;
+            dp += literalLength;
+            if (sp >= src.length) {
+                break;
+            }
+            int distance = (src[sp] & 0xff) | (src[sp + 1] & 0xff) << 8;
+            sp += 2;
+            int matchLength = token & 0x0f;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[sp++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            int ref = dp - distance;
+            for (int i = 0; i < matchLength; i++) {
+                dst[dp++] = dst[ref++];
+            }
+        }
+        return dst;
+    }
+
+    private static int writeLength(byte[] dst, int dp, int length) {
+        while (length >= 255) {
+            dst[dp++] = (byte) 255;
+            length -= 255;
+        }
+        dst[dp++] = (byte) length;
+        return dp;
+    }
+
+    private static int readInt(byte[] src, int pos) {
+        return (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8
+                | (src[pos + 2] & 0xff) << 16 | (src[pos + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
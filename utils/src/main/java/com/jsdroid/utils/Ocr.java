@@ -22,12 +22,12 @@ public class Ocr {
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
     public static String ocr(int left, int top, int right, int bottom)
             throws IOException {
-        Bitmap bmp = BitmapUtil.takeScreenshot();
-        Bitmap image = Bitmap.createBitmap(bmp, left, top, right - left, bottom
-                - top);
+        Bitmap image = BitmapUtil.takeScreenshot(left, top, right, bottom, 1);
+        if (image == null) {
+            return null;
+        }
         String result = ocr(image);
-        image.recycle();
-        bmp.recycle();
+        BitmapPool.release(image);
         return result;
     }
 